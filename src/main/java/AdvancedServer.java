@@ -2,37 +2,70 @@ package main.java;
 
 
 import main.java.cache.BloomFilter;
+import main.java.cache.CountingBloomFilter;
 import main.java.cache.HybridCache;
+import main.java.cache.StaticFileWatcher;
 import main.java.config.ServerConfig;
-import main.java.connectionManagement.Connection;
+import main.java.connectionManagement.AdmissionControl;
+import main.java.connectionManagement.CoDel;
+import main.java.connectionManagement.EventLoop;
+import main.java.connectionManagement.NioConnection;
+import main.java.connectionManagement.ResponseBuffer;
+import main.java.connectionManagement.RingWorkerPool;
+import main.java.connectionManagement.SocketSink;
+import main.java.connectionManagement.WeightedFairScheduler;
 import main.java.http.HTTPRequest;
+import main.java.http.HeadOnlyOutput;
+import main.java.http.HttpParser;
+import main.java.http.HttpResponse;
+import main.java.http.RequestClass;
+import main.java.http.ResponseWriter;
+import main.java.http.RouteReloader;
 import main.java.http.Router;
 import main.java.rateLimiting.RateLimiter;
 
 import java.io.*;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.util.Objects;
-import java.util.PriorityQueue;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 public class AdvancedServer {
 
     private final ServerConfig config;
-    private Router router;
-    private ServerSocket serverSocket;
-    private boolean isRunning = false;
+    // immutable routing table shared by all workers, replaced as a whole when the route files change
+    private volatile Router router;
+    private RouteReloader routeReloader;
+    private volatile boolean isRunning = false;
     private Socket clientSocket;
     private ExecutorService threadPool;
     private BloomFilter filter;
     private HybridCache cache;
+    private StaticFileWatcher staticFileWatcher;
     private RateLimiter rateLimiter;
+    private AdmissionControl admission;     // open connections (counted at accept and close in both io modes),
+                                            // maxConnections, and the accept-time rate check when admissionControl=true
+    private CoDel codel;                    // sheds requests that waited too long for a worker
+    private WeightedFairScheduler scheduler;    // which request gets a worker next, per RequestClass
+    private ServerSocketChannel[] serverChannels;
+    private EventLoop[] eventLoops;
 
-    private final AtomicInteger activeConnections = new AtomicInteger(0);
     public final AtomicInteger totalConnections = new AtomicInteger(0);
     private final String PUBLIC_DIR = "src/main/resources/staticFiles";
 
@@ -41,70 +74,220 @@ public class AdvancedServer {
     }
 
     private void start() throws IOException {
+        if (config.isNioMode()) {
+            startNio();
+            return;
+        }
 
-        serverSocket = new ServerSocket(config.getPort());
+        // blocking channels rather than a plain ServerSocket: accepted sockets then have a SocketChannel,
+        // which static files use for zero-copy transferTo
+        int acceptors = Math.max(1, config.getAcceptors());
+        serverChannels = openListeners(acceptors);
         isRunning = true;
-        System.out.println("Server is running at port: "+config.getPort());
+        System.out.println("Server is running at port: " + config.getPort() + " (" + acceptors + " acceptors, "
+                + serverChannels.length + " listening sockets)");
+
+        init();
+
+        // with SO_REUSEPORT every acceptor has a socket of its own and the kernel spreads the connections,
+        // otherwise they take turns on the one socket and overlap the work done per accepted connection.
+        // Nothing is read here: requests are read per connection (see BlockingConnection) and then scheduled
+        for (int i = 0; i < acceptors; i++) {
+            ServerSocketChannel listener = serverChannels[i % serverChannels.length];
+            new Thread(() -> {
+                while (isRunning) {
+                    try {
+                        SocketChannel channel = listener.accept();
+                        // over-limit clients are turned away here, before they are queued or parsed
+                        if (!admission.admit(channel)) {
+                            continue;
+                        }
+                        BlockingConnection conn;
+                        try {
+                            conn = new BlockingConnection(channel.socket());
+                        } catch (IOException e) {
+                            channel.close();
+                            admission.release();
+                            continue;
+                        }
+                        conn.readNext();
+                    } catch (ClosedChannelException e) {
+                        break;  // stopped
+                    } catch (IOException e) {
+                        // e.g. out of file descriptors, the listening socket itself is fine
+                        System.err.println("Accept failed: " + e.getMessage());
+                    }
+                }
+            }, "Acceptor-" + (i + 1)).start();
+        }
+    }
 
-        // create {threadPoolSize} threadPool and make them custom named using serverThreadFactory
-        threadPool = Executors.newFixedThreadPool(config.getThreads(), new ServerThreadFactory());
+    // one listening socket, or with reusePort one per acceptor, all bound to the same port. The kernel then
+    // load-balances new connections over them - also over other server processes started with reusePort
+    private ServerSocketChannel[] openListeners(int count) throws IOException {
+        boolean reusePort = config.isReusePort();
+        ServerSocketChannel first = ServerSocketChannel.open();
+        if (reusePort && !first.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+            System.err.println("SO_REUSEPORT is not supported here, using one listening socket");
+            reusePort = false;
+        }
+        ServerSocketChannel[] listeners = new ServerSocketChannel[reusePort ? count : 1];
+        for (int i = 0; i < listeners.length; i++) {
+            ServerSocketChannel channel = i == 0 ? first : ServerSocketChannel.open();
+            if (reusePort) {
+                channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+            channel.bind(new InetSocketAddress(config.getPort()), config.getBacklog());
+            listeners[i] = channel;
+        }
+        return listeners;
+    }
+
+    // shared setup for both io modes: worker pool, rate limiter, cache, bloom filter and routes
+    private void init() {
+        if (config.useVirtualThreads()) {
+            // one cheap virtual thread per handler - blocking I/O in handlers unmounts instead of holding a carrier
+            threadPool = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("AdvancedServer-v", 1).factory());
+        } else if (config.isRingHandoff()) {
+            // {threads} workers claiming requests straight from a lock-free ring, no queue lock or node per request
+            RingWorkerPool.WaitStrategy waitStrategy = switch (config.getWaitStrategy().toLowerCase()) {
+                case "spin" -> RingWorkerPool.WaitStrategy.BUSY_SPIN;
+                case "yield" -> RingWorkerPool.WaitStrategy.YIELD;
+                default -> RingWorkerPool.WaitStrategy.PARK;
+            };
+            threadPool = new RingWorkerPool(config.getThreads(), config.getRingSize(), waitStrategy, new ServerThreadFactory());
+        } else {
+            // create {threadPoolSize} threadPool and make them custom named using serverThreadFactory
+            threadPool = Executors.newFixedThreadPool(config.getThreads(), new ServerThreadFactory());
+        }
+        // the scheduler only hands the pool what it can start right away: at most {threads} requests at once on
+        // the fixed pool, as many as the class limits allow on virtual threads
+        RequestClass[] classes = RequestClass.values();
+        int[] weights = new int[classes.length];
+        int[] maxWorkers = new int[classes.length];
+        for (RequestClass requestClass : classes) {
+            weights[requestClass.ordinal()] = config.getClassWeight(requestClass);
+            maxWorkers[requestClass.ordinal()] = config.getClassWorkers(requestClass);
+        }
+        scheduler = new WeightedFairScheduler(threadPool,
+                config.useVirtualThreads() ? Integer.MAX_VALUE : config.getThreads(), weights, maxWorkers);
 
         // Initialize rate limiter (server + per-IP + per-path)
+        RateLimiter.Algorithm algorithm = "gcra".equalsIgnoreCase(config.getRateLimitAlgorithm())
+                ? RateLimiter.Algorithm.GCRA : RateLimiter.Algorithm.TOKEN_BUCKET;
         rateLimiter = new RateLimiter(
-                100, 10,10, 2, 5, 1
+                100, 10,10, 2, 5, 1, algorithm,
+                config.isSketchIpLimits() ? RateLimiter.IpMode.SKETCH : RateLimiter.IpMode.EXACT,
+                config.getRateLimitSharedDir().isEmpty() ? null : Paths.get(config.getRateLimitSharedDir())
         );
+        admission = new AdmissionControl(config.isAdmissionControl() ? rateLimiter : null,
+                config.isAdmissionResponse(), config.getMaxConnections());
+        codel = new CoDel(TimeUnit.MILLISECONDS.toNanos(config.getQueueTarget()),
+                TimeUnit.MILLISECONDS.toNanos(config.getQueueInterval()));
 
         // initialize the cache and bloomFilter
-        filter = new BloomFilter(1024 * 1024, 3);// 1MB bit array, 3 hash functions
-        File publicDir = new File(PUBLIC_DIR);
-        for (File f : Objects.requireNonNull(publicDir.listFiles())) {
-            if (f.isFile()) {
-                String relativePath = "/" + f.getName();  // or how your router defines paths
-                filter.add(relativePath);
-            }
+        // sized for the files there now with room to grow, 1% false positives; counting so deleted files drop out
+        Path publicDir = Paths.get(PUBLIC_DIR);
+        long expectedFiles = Math.max(1024, 4L * StaticFileWatcher.countFiles(publicDir));
+        filter = new CountingBloomFilter(expectedFiles, 0.01);
+
+        HybridCache.Policy policy = "legacy".equalsIgnoreCase(config.getCachePolicy())
+                ? HybridCache.Policy.LEGACY : HybridCache.Policy.TINY_LFU;
+        cache = config.getCacheMaxBytes() > 0
+                ? new HybridCache(config.getCacheMaxBytes(), config.isCacheOffHeap(), filter, policy)
+                : new HybridCache(config.getCacheMaxEntries(), filter, policy);
+
+        // changed files in the public dir are dropped from the cache, new/deleted ones added to/removed from the filter
+        staticFileWatcher = new StaticFileWatcher(publicDir, cache);
+        staticFileWatcher.scan();
+        try {
+            staticFileWatcher.start();
+        } catch (IOException e) {
+            System.err.println("Static file watching disabled, cached files won't be refreshed: " + e.getMessage());
         }
 
-        cache = new HybridCache(2,filter);
+        // build the routing table once, later changes to the route files are swapped in by the reloader
+        router = new Router(config);
+        routeReloader = new RouteReloader(() -> new Router(config), fresh -> router = fresh);
+        try {
+            routeReloader.start();
+        } catch (IOException e) {
+            System.err.println("Route hot reload disabled: " + e.getMessage());
+        }
+    }
 
+    // Non-blocking mode: a few selector threads hold all the open connections and only hand
+    // a connection to the worker pool once a complete request has been buffered
+    private void startNio() throws IOException {
+        eventLoops = new EventLoop[Math.max(1, config.getEventLoops())];
+        // the first {acceptors} loops accept, each spreads its connections round-robin over all loops
+        int acceptors = Math.min(eventLoops.length, Math.max(1, config.getAcceptors()));
+        serverChannels = openListeners(acceptors);
+        isRunning = true;
 
-        // Priority queue of connections
-        PriorityQueue<Connection> connectionQueue = new PriorityQueue<>();
+        init();
 
-       // Dispatcher thread: pulls from PQ and submits to pool
-        Thread dispatcher = new Thread(() -> {
-            while (isRunning) {
-                try {
-                    Connection conn = null;
-                    synchronized (connectionQueue) {
-                        while (connectionQueue.isEmpty() && isRunning) {
-                            connectionQueue.wait(); // wait for new connection
-                        }
-                        if (!connectionQueue.isEmpty()) {
-                            conn = connectionQueue.poll();
-                        }
-                    }
-                    if (conn != null) {
-                        threadPool.submit(new ManagedClientHandler(conn.clientSocket));
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-            }
-        });
-        dispatcher.start();
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new EventLoop(config.getConnectionTimeout(), config.getReadTimeout(),
+                    (conn, request) -> scheduler.submit(router.classify(request), new NioRequestHandler(conn, request)));
+        }
+        for (int i = 0; i < acceptors; i++) {
+            // without SO_REUSEPORT they all wait on the one socket, a channel can be registered with several selectors
+            eventLoops[i].listen(serverChannels[i % serverChannels.length], eventLoops, admission);
+        }
+        for (int i = 0; i < eventLoops.length; i++) {
+            new Thread(eventLoops[i], "EventLoop-" + (i + 1)).start();
+        }
+        System.out.println("Server is running at port: " + config.getPort() + " (nio, " + eventLoops.length
+                + " event loops, " + acceptors + " accepting, " + serverChannels.length + " listening sockets)");
+    }
 
-        while (isRunning) {
-            Socket clientSocket = serverSocket.accept();
-            String clientIP = clientSocket.getInetAddress().getHostAddress();
+    // rate limit -> route, shared by the blocking and the nio handlers.
+    // Returns the pending response of an async route (nothing written yet), null once the response is written
+    private CompletionStage<HttpResponse> handleRequest(HTTPRequest request, String clientIP, PrintWriter out, OutputStream outStream) {
+        // read the volatile once, rate limit key and routing must come from the same table
+        Router router = this.router;
+        String path = router.rateLimitKey(request);
+
+        // Apply rate limiting
+        if (!rateLimiter.checkRequest(path, clientIP)) {
+            String body = "429 Too Many Requests\n";
+            ResponseWriter.writeHead(out, request, "429 Too Many Requests", "text/plain", body.length());
+            RateLimiter.writeRateLimitHeaders(out, rateLimiter, clientIP, path);
+            ResponseWriter.endHeaders(out);
+            out.print(body);
+            out.flush();
+            return null;
+        }
 
-            Connection conn = new Connection(clientSocket, clientIP);
+        // Route request
+        return router.route(request, out, outStream, cache);
+    }
 
-            synchronized (connectionQueue) {
-                connectionQueue.add(conn);
-                connectionQueue.notify();
+    // waits for an async route's response without holding a thread: onResponse runs on whichever thread completes
+    // the stage, or on the timer thread after asyncTimeout, with the response to send - a 500/504 if there is none
+    private void whenResponded(CompletionStage<HttpResponse> pending, String clientIP, Consumer<HttpResponse> onResponse) {
+        CompletableFuture<HttpResponse> response = new CompletableFuture<>();
+        pending.whenComplete((r, e) -> {
+            if (e != null) {
+                response.completeExceptionally(e);
+            } else {
+                response.complete(r);
             }
-        }
-
+        });
+        response.orTimeout(config.getAsyncTimeout(), TimeUnit.MILLISECONDS).whenComplete((r, e) -> {
+            if (e == null && r != null) {
+                onResponse.accept(r);
+                return;
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof TimeoutException) {
+                onResponse.accept(HttpResponse.text(504, "text/plain", "504 Gateway Timeout\n"));
+            } else {
+                System.err.println("Async handler failed for " + clientIP + ": " + (cause == null ? "no response" : cause.getMessage()));
+                onResponse.accept(HttpResponse.text(500, "text/plain", "500 Internal Server Error\n"));
+            }
+        });
     }
 
     private static class ServerThreadFactory implements ThreadFactory {
@@ -120,67 +303,232 @@ public class AdvancedServer {
         }
     }
 
-    private class ManagedClientHandler implements Runnable {
-        Socket clientSocket;
-        public ManagedClientHandler(Socket clientSocket) {
+    // A client connection in blocking mode. Waiting for and reading the next request happens on a virtual
+    // thread, which costs next to nothing while the client is idle or slow; only a complete request, classified
+    // by its route, is queued with the scheduler for a worker. So priorities are decided per request, and an
+    // idle keep-alive connection doesn't hold on to a worker.
+    private class BlockingConnection {
+        private final Socket clientSocket;
+        private final String clientIP;
+        private final String clientAddress;
+        private final InputStream in;
+        private final SocketSink outStream;
+        private final PrintWriter out;
+        private final HttpParser parser = new HttpParser();
+        private final byte[] readChunk = new byte[8192];
+        private int served = 0;
+
+        BlockingConnection(Socket clientSocket) throws IOException {
             this.clientSocket = clientSocket;
+            this.clientIP = clientSocket.getInetAddress().getHostAddress();
+            this.clientAddress = clientSocket.getRemoteSocketAddress().toString();
+            this.in = clientSocket.getInputStream();
+            this.outStream = new SocketSink(clientSocket.getOutputStream(), clientSocket.getChannel());
+            this.out = new PrintWriter(new OutputStreamWriter(outStream, StandardCharsets.UTF_8), true);
         }
 
-        @Override
-        public void run() {
-            activeConnections.incrementAndGet();
-            String clientAddress = clientSocket.getRemoteSocketAddress().toString();
+        void readNext() {
+            Thread.startVirtualThread(this::awaitRequest);
+        }
+
+        private void awaitRequest() {
+            HTTPRequest request;
             try {
-                BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                OutputStream outStream = clientSocket.getOutputStream();
-                PrintWriter out = new PrintWriter(outStream, true);
-
-                // Parse request
-                HTTPRequest request = new HTTPRequest();
-                request.parseHTTPRequest(in);
-
-                // Assign connection priority (based on path)
-                String path = request.getPath();
-                String clientIP = clientSocket.getInetAddress().getHostAddress();
-                // you may want to hold a reference to the Connection object here
-                Connection conn = new Connection(clientSocket, clientIP);
-                conn.setPriority(path);
-
-                // Apply rate limiting
-                if (!rateLimiter.checkRequest(path, clientIP)) {
-                    out.println("HTTP/1.1 429 Too Many Requests");
-                    RateLimiter.writeRateLimitHeaders(out, rateLimiter, clientIP, path);
-                    out.println("Content-Type: text/plain");
-                    out.println();
-                    out.println("429 Too Many Requests");
-                    out.flush();
+                request = readRequest();
+            } catch (IOException e) {
+                close();    // idle/read timeout, malformed request or connection reset
+                return;
+            }
+            if (request == null || !isRunning) {
+                close();    // client closed the connection
+                return;
+            }
+            served++;
+            if (served >= config.getMaxRequestsPerConnection()) {
+                request.setKeepAlive(false);
+            }
+            long queuedAt = System.nanoTime();
+            scheduler.submit(router.classify(request), () -> serve(request, queuedAt));
+        }
+
+        // feeds socket bytes to the parser until it has a full request, null on end of stream.
+        // Between requests the client may stay quiet for connectionTimeout, a request it has started must
+        // be complete within readTimeout - a per-read timeout alone would let a byte every few seconds through
+        private HTTPRequest readRequest() throws IOException {
+            HTTPRequest request = parser.next();   // a pipelined request may already be buffered
+            long readTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getReadTimeout());
+            long deadline = parser.isIdle() ? 0 : System.nanoTime() + readTimeoutNanos;
+            while (request == null) {
+                if (deadline == 0) {
+                    clientSocket.setSoTimeout(config.getConnectionTimeout());
+                } else {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) {
+                        throw new SocketTimeoutException("Request not complete after " + config.getReadTimeout() + " ms");
+                    }
+                    clientSocket.setSoTimeout((int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(left)));
+                }
+                int n = in.read(readChunk);
+                if (n == -1) {
+                    if (!parser.isIdle()) {
+                        throw new EOFException("Connection closed mid-request");
+                    }
+                    return null;
+                }
+                parser.feed(readChunk, 0, n);
+                if (deadline == 0 && !parser.isIdle()) {
+                    deadline = System.nanoTime() + readTimeoutNanos;
+                }
+                request = parser.next();
+            }
+            return request;
+        }
+
+        // on a worker: answer the request, then go back to waiting for the next one (pipelined requests are
+        // already sitting in the parser and get answered in order)
+        private void serve(HTTPRequest request, long queuedAt) {
+            // HEAD: the GET response with the body cut off
+            OutputStream outStream = request.isHead() ? new HeadOnlyOutput(this.outStream) : this.outStream;
+            PrintWriter out = request.isHead()
+                    ? new PrintWriter(new OutputStreamWriter(outStream, StandardCharsets.UTF_8), true) : this.out;
+            if (codel.shouldDrop(queuedAt)) {
+                // waited too long for a worker: answer right away and hang up instead of adding to the backlog
+                writeServiceUnavailable(out);
+                close();
+                return;
+            }
+            boolean keepAlive = false;
+            try {
+                CompletionStage<HttpResponse> pending = handleRequest(request, clientIP, out, outStream);
+                if (pending != null) {
+                    // the worker is free again, the connection waits for the response on its own. Writing may block
+                    // on the client, so not on the thread that completes the stage
+                    whenResponded(pending, clientIP, response -> Thread.startVirtualThread(() -> finish(request, response, out, outStream)));
                     return;
                 }
+                out.flush();
+                keepAlive = request.isKeepAlive() && !out.checkError();
+            } catch (RuntimeException e) {
+                System.err.println("Error handling request from " + clientIP + ": " + e.getMessage());
+            }
+            afterResponse(keepAlive);
+        }
 
-                // Route request
-                router = new Router();
-                router.route(request, out, outStream, cache);
+        // the response of an async route is ready
+        private void finish(HTTPRequest request, HttpResponse response, PrintWriter out, OutputStream outStream) {
+            response.send(request, out, outStream);
+            afterResponse(request.isKeepAlive() && !out.checkError());
+        }
+
+        private void afterResponse(boolean keepAlive) {
+            if (keepAlive && isRunning) {
+                readNext();
+            } else {
+                close();
+            }
+        }
 
+        private void close() {
+            try {
+                clientSocket.close();
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                System.err.println("Error closing socket: " + e.getMessage());
+            }
+            admission.release();
+            System.out.println("Disconnected " + clientAddress +
+                    " (Active: " + admission.getOpenConnections() + ")");
+        }
+    }
+
+    private static void writeServiceUnavailable(PrintWriter out) {
+        String body = "503 Service Unavailable\n";
+        ResponseWriter.writeHead(out, null, "503 Service Unavailable", "text/plain", body.length());
+        ResponseWriter.writeHeader(out, "Retry-After", 1);
+        ResponseWriter.endHeaders(out);
+        out.print(body);
+        out.flush();
+    }
+
+    // Worker side of the nio mode: the request is already fully read and parsed, so nothing here blocks on the client
+    private class NioRequestHandler implements Runnable {
+        private final NioConnection connection;
+        private final HTTPRequest request;
+        private final long queuedAt = System.nanoTime();
+
+        public NioRequestHandler(NioConnection connection, HTTPRequest request) {
+            this.connection = connection;
+            this.request = request;
+        }
+
+        @Override
+        public void run() {
+            ResponseBuffer buffer = new ResponseBuffer();
+            OutputStream outStream = request.isHead() ? new HeadOnlyOutput(buffer) : buffer;   // see BlockingConnection.serve
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(outStream, StandardCharsets.UTF_8), true);
+            boolean keepAlive = false;
+            CompletionStage<HttpResponse> pending = null;
+            try {
+                if (codel.shouldDrop(queuedAt)) {
+                    writeServiceUnavailable(out);   // waited too long for a worker, see BlockingConnection.serve
+                    return;
+                }
+                if (connection.getRequestCount() >= config.getMaxRequestsPerConnection()) {
+                    request.setKeepAlive(false);
+                }
+
+                pending = handleRequest(request, connection.clientIP, out, outStream);
+                keepAlive = request.isKeepAlive();
+            } catch (RuntimeException e) {
+                System.err.println("Error handling request from " + connection.clientIP + ": " + e.getMessage());
             } finally {
-                try {
-                    clientSocket.close();
-                } catch (IOException e) {
-                    System.err.println("Error closing socket: " + e.getMessage());
+                if (pending == null) {
+                    out.flush();
+                    connection.respond(buffer, keepAlive);
                 }
-                activeConnections.decrementAndGet();
-                System.out.println("Disconnected " + clientAddress +
-                        " (Active: " + activeConnections.get() + ")");
+            }
+            if (pending != null) {
+                // rendering into the buffer doesn't block and the event loop does the writing, so this can run
+                // right on the thread that completes the stage
+                whenResponded(pending, connection.clientIP, response -> {
+                    response.send(request, out, outStream);
+                    connection.respond(buffer, request.isKeepAlive());
+                });
             }
         }
+    }
+
+    // -------------------- LOAD METRICS --------------------
+    // requests waiting for a worker right now
+    public int getQueueDepth() {
+        return scheduler.getQueued();
+    }
+
+    // shed after waiting too long (CoDel) + turned away at accept for being over maxConnections
+    public long getShedCount() {
+        return codel.getDropped() + admission.getOverCapacity();
+    }
 
+    public int getOpenConnections() {
+        return admission.getOpenConnections();
     }
 
     public void stop() throws IOException {
         isRunning = false;
-        if (serverSocket != null) {
-            serverSocket.close();
+        if (serverChannels != null) {
+            for (ServerSocketChannel channel : serverChannels) {
+                channel.close();
+            }
+        }
+        if (eventLoops != null) {
+            for (EventLoop loop : eventLoops) {
+                loop.shutdown();
+            }
+        }
+        if (routeReloader != null) {
+            routeReloader.stop();
+        }
+        if (staticFileWatcher != null) {
+            staticFileWatcher.stop();
         }
 
         threadPool.shutdown(); // stop accepting new tasks
@@ -202,6 +550,15 @@ public class AdvancedServer {
         System.out.println("Hits: " + cache.getHits());
         System.out.println("Misses: " + cache.getMisses());
         System.out.println("Evictions: " + cache.getEvictions());
+        System.out.printf("Hit ratio: %.2f%%%n", cache.getHitRatio() * 100);
+        System.out.printf("Bloom filter: %d slots, %d hashes, false positives %.3f%% observed / %.3f%% expected%n",
+                filter.getSize(), filter.getHashCount(),
+                filter.getObservedFalsePositiveRate() * 100, filter.getExpectedFalsePositiveRate() * 100);
+        System.out.println("Cached weight: " + cache.getUsedWeight() + ", off-heap reserved: " + cache.getOffHeapReservedBytes() + " bytes");
+        System.out.println("Connections rejected at accept: " + admission.getRejected() + " rate limited, "
+                + admission.getOverCapacity() + " over maxConnections");
+        System.out.println("Shed after queueing: " + codel.getDropped() + ", queue depth: " + scheduler.getQueued()
+                + ", open connections: " + admission.getOpenConnections());
     }
 
     private static void printUsage() {
@@ -0,0 +1,104 @@
+package main.java.benchmarks;
+
+import main.java.cache.BloomFilter;
+import main.java.cache.HybridCache;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+// Hit ratio and multithreaded throughput of HybridCache with the TinyLFU policy vs the legacy score scan.
+// The workload is a Zipf-like distribution over a key space much larger than the cache, plus a
+// share of one-hit-wonder scans that a good admission policy keeps out.
+// Run with: java -cp <classes> main.java.benchmarks.CacheBenchmark
+public class CacheBenchmark {
+    private static final int KEYS = 20_000;
+    private static final int CACHE_SIZE = 1_000;
+    private static final int OPERATIONS = 2_000_000;
+    private static final byte[] HEAD = "HTTP/1.1 200 OK\r\nContent-Length: 16\r\n\r\n".getBytes();
+    private static final byte[] CLOSE_HEAD = "HTTP/1.1 200 OK\r\nContent-Length: 16\r\nConnection: close\r\n\r\n".getBytes();
+    private static final byte[] RESPONSE = Arrays.copyOf(HEAD, HEAD.length + 16);     // head + 16 byte body
+
+    public static void main(String[] args) throws InterruptedException {
+        int[] trace = zipfTrace(OPERATIONS, KEYS, 0.9, 42);
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+        for (HybridCache.Policy policy : HybridCache.Policy.values()) {
+            HybridCache cache = newCache(policy);
+            long t0 = System.nanoTime();
+            replay(cache, trace, 0, trace.length);
+            long single = System.nanoTime() - t0;
+
+            HybridCache shared = newCache(policy);
+            long multi = runConcurrent(shared, trace, threads);
+
+            System.out.printf("%-8s hit ratio %5.1f%% | 1 thread %6.0f ns/op | %d threads %6.0f ns/op%n",
+                    policy, cache.getHitRatio() * 100, (double) single / trace.length,
+                    threads, (double) multi / trace.length);
+        }
+    }
+
+    private static HybridCache newCache(HybridCache.Policy policy) {
+        return new HybridCache(CACHE_SIZE, new BloomFilter(1 << 20, 3), policy);
+    }
+
+    private static void replay(HybridCache cache, int[] trace, int from, int to) {
+        for (int i = from; i < to; i++) {
+            String key = "/file-" + trace[i];
+            if (cache.getFile(key) == null) {
+                cache.putResponse(key, RESPONSE, HEAD.length, CLOSE_HEAD, null, cache.generation(key));
+            }
+        }
+    }
+
+    // wall time for all threads to replay their share of the trace
+    private static long runConcurrent(HybridCache cache, int[] trace, int threads) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        int share = trace.length / threads;
+        for (int t = 0; t < threads; t++) {
+            int from = t * share;
+            new Thread(() -> {
+                try {
+                    start.await();
+                    replay(cache, trace, from, from + share);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }).start();
+        }
+        long t0 = System.nanoTime();
+        start.countDown();
+        done.await();
+        return System.nanoTime() - t0;
+    }
+
+    // zipf by inverse CDF, with every 5th access a never-repeating scan key
+    private static int[] zipfTrace(int n, int keys, double skew, long seed) {
+        double[] cdf = new double[keys];
+        double sum = 0;
+        for (int i = 0; i < keys; i++) {
+            sum += 1.0 / Math.pow(i + 1, skew);
+            cdf[i] = sum;
+        }
+        Random random = new Random(seed);
+        int[] trace = new int[n];
+        int scanKey = keys;
+        for (int i = 0; i < n; i++) {
+            if (i % 5 == 4) {
+                trace[i] = scanKey++;
+                continue;
+            }
+            double u = random.nextDouble() * sum;
+            int lo = 0;
+            int hi = keys - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cdf[mid] < u) lo = mid + 1; else hi = mid;
+            }
+            trace[i] = lo;
+        }
+        return trace;
+    }
+}
@@ -0,0 +1,60 @@
+package main.java.benchmarks;
+
+import main.java.rateLimiting.RateLimiter;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+// Throughput of RateLimiter.checkRequest with the lock based TokenBucket vs the lock-free GCRA limiter.
+// Every thread goes through the one global limiter (the contention point) plus a few IPs and paths.
+// Limits are set high so every check does the full update instead of bailing out early.
+// Run with: java -cp <classes> main.java.benchmarks.RateLimiterBenchmark
+public class RateLimiterBenchmark {
+    private static final long DURATION_NANOS = 1_000_000_000L;
+    private static final String[] IPS = {"10.0.0.1", "10.0.0.2", "10.0.0.3", "10.0.0.4"};
+    private static final String[] PATHS = {"/", "/about", "/api/users/:userId", "/time"};
+
+    public static void main(String[] args) throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (RateLimiter.Algorithm algorithm : RateLimiter.Algorithm.values()) {
+            run(algorithm, 1);  // warm up
+            for (int threads = 1; threads <= Math.max(8, cores); threads *= 2) {
+                double opsPerSec = run(algorithm, threads);
+                System.out.printf("%-12s %2d threads %,14.0f checks/s%n", algorithm, threads, opsPerSec);
+            }
+        }
+    }
+
+    private static double run(RateLimiter.Algorithm algorithm, int threads) throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(Integer.MAX_VALUE, 1e12, Integer.MAX_VALUE, 1e12,
+                Integer.MAX_VALUE, 1e12, algorithm);
+        LongAdder checks = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                long end = System.nanoTime() + DURATION_NANOS;
+                long n = 0;
+                int i = id;
+                while (System.nanoTime() < end) {
+                    for (int j = 0; j < 64; j++, i++) {
+                        limiter.checkRequest(PATHS[i & 3], IPS[(i >> 2) & 3]);
+                    }
+                    n += 64;
+                }
+                checks.add(n);
+                done.countDown();
+            }).start();
+        }
+        start.countDown();
+        done.await();
+        return checks.sum() * 1e9 / DURATION_NANOS;
+    }
+}
@@ -0,0 +1,97 @@
+package main.java.benchmarks;
+
+import main.java.handlers.HelloHandler;
+import main.java.handlers.HttpHandler;
+import main.java.http.CompiledRouter;
+import main.java.http.TrieRouter;
+
+// Compares the HashMap/split based TrieRouter.findPath with the compiled, in-place CompiledRouter.find.
+// Both resolve the same routes with the same priority and backtracking, wildcards included.
+// Run with: java -cp <classes> main.java.benchmarks.RouterBenchmark
+public class RouterBenchmark {
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+    private static final int LOOKUPS_PER_ROUND = 2_000_000;
+
+    public static void main(String[] args) {
+        TrieRouter trie = new TrieRouter();
+        HttpHandler handler = new HelloHandler();
+        String[] routes = {
+                "/api/users/:userId", "/api/users/:userId/posts/:postId", "/api/time", "/api/health",
+                "/posts/:postId/comments/:commentId", "/files/*path", "/api/orders/:orderId/items",
+                "/api/products", "/api/products/:productId", "/api/products/featured"
+        };
+        for (String route : routes) {
+            trie.setPath(route, handler);
+        }
+        CompiledRouter compiled = trie.compile();
+
+        String[] paths = {
+                "/api/users/42", "/api/users/7/posts/1001", "/api/time", "/api/products/featured",
+                "/api/products/123", "/posts/9/comments/3", "/api/orders/55/items", "/files/css/site.css",
+                "/index.html", "/about"
+        };
+
+        long sink = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink += runTrie(trie, paths) + runCompiled(compiled, paths);
+        }
+
+        long trieNanos = 0;
+        long compiledNanos = 0;
+        long lookupOnlyNanos = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long t0 = System.nanoTime();
+            sink += runTrie(trie, paths);
+            long t1 = System.nanoTime();
+            sink += runCompiled(compiled, paths);
+            long t2 = System.nanoTime();
+            sink += runCompiledLookupOnly(compiled, paths);
+            long t3 = System.nanoTime();
+            trieNanos += t1 - t0;
+            compiledNanos += t2 - t1;
+            lookupOnlyNanos += t3 - t2;
+        }
+
+        long lookups = (long) ROUNDS * LOOKUPS_PER_ROUND;
+        System.out.printf("TrieRouter.findPath   : %6.1f ns/lookup%n", (double) trieNanos / lookups);
+        System.out.printf("CompiledRouter.find   : %6.1f ns/lookup (params materialized)%n", (double) compiledNanos / lookups);
+        System.out.printf("CompiledRouter.find   : %6.1f ns/lookup (params never read)%n", (double) lookupOnlyNanos / lookups);
+        System.out.println("(ignore) " + sink);
+    }
+
+    // the common case for handlers that don't read params (and for every static file request that misses)
+    private static long runCompiledLookupOnly(CompiledRouter compiled, String[] paths) {
+        long matched = 0;
+        for (int i = 0; i < LOOKUPS_PER_ROUND; i++) {
+            if (compiled.find(paths[i % paths.length]) != null) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    private static long runTrie(TrieRouter trie, String[] paths) {
+        long matched = 0;
+        for (int i = 0; i < LOOKUPS_PER_ROUND; i++) {
+            TrieRouter.RouteMatch m = trie.findPath(paths[i % paths.length]);
+            if (m != null) {
+                matched += m.params().size();
+            }
+        }
+        return matched;
+    }
+
+    // params are materialized here too, so both sides do the same work for handlers that read them
+    private static long runCompiled(CompiledRouter compiled, String[] paths) {
+        long matched = 0;
+        for (int i = 0; i < LOOKUPS_PER_ROUND; i++) {
+            String path = paths[i % paths.length];
+            CompiledRouter.Route r = compiled.find(path);
+            if (r != null) {
+                matched += r.params(path).size();
+            }
+        }
+        return matched;
+    }
+}
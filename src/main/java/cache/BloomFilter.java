@@ -1,36 +1,157 @@
 package main.java.cache;
 
-import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
+// Tells us quickly that a static path definitely doesn't exist, so those requests never touch the disk.
+//
+// Sized from the expected number of paths and the false-positive rate we accept:
+//   m = -n ln(p) / ln(2)^2 bits (rounded up to a power of two, so a probe is a mask instead of a %)
+//   k = m/n ln(2) probes
+// The k probe positions come from one 64-bit murmur-style hash of the path, split into h1 and h2
+// (Kirsch-Mitzenmacher double hashing: probe i = h1 + i*h2). Bits live in a long[] (AtomicLongArray,
+// adds may come from the file watcher while requests read).
 public class BloomFilter {
-    private final BitSet bitset;
-    private final int size;
-    private final int hashCount;    // number of times we want the hash function to run
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
 
+    protected final long mask;          // slots - 1
+    protected final int hashCount;      // number of times we want the hash function to run
+    private final AtomicLongArray bits;
+
+    private final LongAdder insertions = new LongAdder();
+    private final LongAdder negatives = new LongAdder();        // mightContain said no
+    private final LongAdder falsePositives = new LongAdder();   // said maybe, and it wasn't there
+
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        this(optimalSlots(expectedInsertions, falsePositiveRate),
+                optimalHashCount(expectedInsertions, optimalSlots(expectedInsertions, falsePositiveRate)), true);
+    }
+
+    // fixed size, size is rounded up to a power of two
     public BloomFilter(int size, int hashCount) {
-        this.size = size;
-        this.hashCount = hashCount;
-        this.bitset = new BitSet(size);
+        this(size, hashCount, true);
+    }
+
+    protected BloomFilter(long slots, int hashCount, boolean allocateBits) {
+        long size = slots <= 64 ? 64 : Long.highestOneBit(slots - 1) << 1;
+        this.mask = size - 1;
+        this.hashCount = Math.max(1, hashCount);
+        this.bits = allocateBits ? new AtomicLongArray((int) (size >>> 6)) : null;
+    }
+
+    static long optimalSlots(long n, double p) {
+        n = Math.max(1, n);
+        p = Math.min(0.5, Math.max(1e-9, p));
+        return (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+    }
+
+    static int optimalHashCount(long n, long m) {
+        return Math.max(1, (int) Math.round((double) m / Math.max(1, n) * Math.log(2)));
     }
 
     public void add(String key) {
+        long h1 = hash64(key);
+        long h2 = secondHash(h1);
         for (int i = 0; i < hashCount; i++) {
-            int hash = hash(key, i);   //will generate a large number
-            bitset.set(Math.abs(hash % size), true);   // convert that number between (0 to size-1)
+            increment((h1 + i * h2) & mask);
         }
+        insertions.increment();
     }
 
     public boolean mightContain(String key) {
+        long h1 = hash64(key);
+        long h2 = secondHash(h1);
         for (int i = 0; i < hashCount; i++) {
-            int hash = hash(key, i);
-            if (!bitset.get(Math.abs(hash % size))) {  // check if we have true for that bit in our bitset
+            if (!isSet((h1 + i * h2) & mask)) {
+                negatives.increment();
                 return false;
             }
         }
         return true; // if we get true for all the time hash function runs - it tells that this route might be in cache memory
     }
 
-    private int hash(String key, int seed) {
-        return key.hashCode() ^ (seed * 0x9e3779b9); // generates a unique hash code - sometimes may be few collision but acceptable in bloom filter
+    // the caller found out a "maybe" was wrong (e.g. the file isn't on disk), feeds getObservedFalsePositiveRate
+    public void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    // share of lookups for absent paths that got through the filter
+    public double getObservedFalsePositiveRate() {
+        long fp = falsePositives.sum();
+        long total = fp + negatives.sum();
+        return total == 0 ? 0 : (double) fp / total;
+    }
+
+    // what the formula predicts for the current number of insertions
+    public double getExpectedFalsePositiveRate() {
+        double n = insertions.sum();
+        return Math.pow(1 - Math.exp(-hashCount * n / (mask + 1)), hashCount);
+    }
+
+    public long getSize() {
+        return mask + 1;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    // for subclasses that can take keys out again
+    protected void removed() {
+        insertions.decrement();
+    }
+
+    protected void increment(long slot) {
+        long bit = 1L << slot;      // shifts only use the low 6 bits
+        int word = (int) (slot >>> 6);
+        long current;
+        while (((current = bits.get(word)) & bit) == 0 && !bits.compareAndSet(word, current, current | bit)) {
+            // lost a race with another add on the same word, retry
+        }
+    }
+
+    protected boolean isSet(long slot) {
+        return (bits.get((int) (slot >>> 6)) & (1L << slot)) != 0;
+    }
+
+    // murmur3-style 64-bit hash over the chars of the path (4 chars per block), no byte[] needed
+    static long hash64(String key) {
+        int len = key.length();
+        long h = 0x2545f4914f6cdd1dL ^ len;
+        int i = 0;
+        for (; i + 4 <= len; i += 4) {
+            long k = key.charAt(i)
+                    | (long) key.charAt(i + 1) << 16
+                    | (long) key.charAt(i + 2) << 32
+                    | (long) key.charAt(i + 3) << 48;
+            h ^= mixK(k);
+            h = Long.rotateLeft(h, 27) * 5 + 0x52dce729;
+        }
+        long k = 0;
+        for (int shift = 0; i < len; i++, shift += 16) {
+            k |= (long) key.charAt(i) << shift;
+        }
+        h ^= mixK(k);
+        return fmix64(h ^ len);
+    }
+
+    // odd, so the k probes of one key never repeat a slot pattern
+    static long secondHash(long h1) {
+        return fmix64(h1 ^ 0x9e3779b97f4a7c15L) | 1;
+    }
+
+    private static long mixK(long k) {
+        k *= C1;
+        k = Long.rotateLeft(k, 31);
+        return k * C2;
+    }
+
+    private static long fmix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
     }
 }
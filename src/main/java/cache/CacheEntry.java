@@ -1,24 +1,98 @@
 package main.java.cache;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// A cached static file, stored as the complete pre-rendered response: status line + headers + body in one buffer.
+// The head in there is the keep-alive one; closeHead is the same head with "Connection: close" for the
+// last response on a connection, sent in front of body().
 public class CacheEntry {
-    byte[] data;                     // used to store the file in bytes
+    final ByteBuffer data;          // the response bytes - a heap buffer, or a slot of off-heap memory
+    private final int bodyOffset;   // where the file bytes start in data
+    private final byte[] closeHead;
+    private final Validators validators;
+    final long weight;              // what this entry costs against the cache limit (1 per file, or bytes)
+    // only read and written under the cache's eviction lock (ScoreEvictionPolicy)
     long lastAccessTime;            // when was the last time this file served - mainly for LRU
     int frequency;                  // how many times has this file been served - for LCU
 
-    CacheEntry(byte[] data){
+    // 1 reference held by the cache itself + 1 per reader still writing the body to a socket.
+    // Off-heap memory goes back to the allocator only when the last one is released.
+    private final AtomicInteger refCount = new AtomicInteger(1);
+    private final Consumer<ByteBuffer> onFree;
+
+    // what a conditional GET is checked against, with the pre-rendered 304 heads (keep-alive / closing)
+    public record Validators(String etag, long lastModified, byte[] notModified, byte[] notModifiedClose) {
+    }
+
+    CacheEntry(ByteBuffer data, int bodyOffset, byte[] closeHead, Validators validators, long weight, Consumer<ByteBuffer> onFree){
         this.data = data;
+        this.bodyOffset = bodyOffset;
+        this.closeHead = closeHead;
+        this.validators = validators;
+        this.weight = weight;
+        this.onFree = onFree;
         this.lastAccessTime = System.nanoTime();
         this.frequency = 1;
     }
 
 
-    // whenever a file is served from cache update lastAccess and frequency
-    public void touch(){
+    // whenever a file is served from cache update lastAccess and frequency (replayed from HybridCache's read buffer)
+    void touch(){
         this.lastAccessTime = System.nanoTime();
         this.frequency++;
     }
 
+    // copy of the file bytes on the heap, for callers that need a byte[]
     public byte[] getFileData(){
-        return this.data;
+        if (data.hasArray() && bodyOffset == 0) {
+            return data.array();
+        }
+        byte[] copy = new byte[length()];
+        data.get(bodyOffset, copy);
+        return copy;
+    }
+
+    // independent read-only view of the whole response (head + body), safe to hand to a socket write
+    public ByteBuffer response() {
+        return data.asReadOnlyBuffer();
+    }
+
+    // read-only view of the file bytes only
+    public ByteBuffer body() {
+        return data.asReadOnlyBuffer().position(bodyOffset);
+    }
+
+    // head to send in front of body() when the connection closes after this response
+    public byte[] closeHead() {
+        return closeHead;
+    }
+
+    // null if the entry was stored without validators
+    public Validators validators() {
+        return validators;
+    }
+
+    public int length() {
+        return data.limit() - bodyOffset;
+    }
+
+    // false if the entry was already evicted and its memory released
+    boolean retain() {
+        int count;
+        do {
+            count = refCount.get();
+            if (count == 0) {
+                return false;
+            }
+        } while (!refCount.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    public void release() {
+        if (refCount.decrementAndGet() == 0 && onFree != null) {
+            onFree.accept(data);
+        }
     }
 }
@@ -0,0 +1,64 @@
+package main.java.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Bloom filter that can forget: every slot is a 4-bit counter instead of a bit (16 per long), so deleting
+// a file from the public dir can take its path out again. Costs 4x the memory of the plain filter.
+// A counter that reaches 15 sticks there - decrementing it could create false negatives, and with a
+// properly sized filter that practically never happens.
+// remove() must only be called for keys that were added, StaticFileWatcher keeps track of that.
+public class CountingBloomFilter extends BloomFilter {
+    private static final long MAX = 15;
+
+    private final AtomicLongArray counters;
+
+    public CountingBloomFilter(long expectedInsertions, double falsePositiveRate) {
+        this(optimalSlots(expectedInsertions, falsePositiveRate),
+                optimalHashCount(expectedInsertions, optimalSlots(expectedInsertions, falsePositiveRate)));
+    }
+
+    private CountingBloomFilter(long slots, int hashCount) {
+        super(slots, hashCount, false);
+        this.counters = new AtomicLongArray((int) ((mask + 1) >>> 4));
+    }
+
+    public void remove(String key) {
+        long h1 = hash64(key);
+        long h2 = secondHash(h1);
+        for (int i = 0; i < hashCount; i++) {
+            decrement((h1 + i * h2) & mask);
+        }
+        removed();
+    }
+
+    @Override
+    protected void increment(long slot) {
+        int word = (int) (slot >>> 4);
+        int shift = (int) (slot & 15) << 2;
+        long current;
+        do {
+            current = counters.get(word);
+            if ((current >>> shift & MAX) == MAX) {
+                return;     // saturated
+            }
+        } while (!counters.compareAndSet(word, current, current + (1L << shift)));
+    }
+
+    private void decrement(long slot) {
+        int word = (int) (slot >>> 4);
+        int shift = (int) (slot & 15) << 2;
+        long current;
+        do {
+            current = counters.get(word);
+            long count = current >>> shift & MAX;
+            if (count == 0 || count == MAX) {
+                return;     // never added, or saturated and no longer exact
+            }
+        } while (!counters.compareAndSet(word, current, current - (1L << shift)));
+    }
+
+    @Override
+    protected boolean isSet(long slot) {
+        return (counters.get((int) (slot >>> 4)) >>> ((int) (slot & 15) << 2) & MAX) != 0;
+    }
+}
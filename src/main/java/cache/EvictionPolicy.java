@@ -0,0 +1,15 @@
+package main.java.cache;
+
+// Decides which entry leaves HybridCache. All calls happen under the cache's eviction lock.
+interface EvictionPolicy {
+
+    // a cache hit (replayed from the read buffers, so possibly a little late)
+    void onAccess(String key);
+
+    void onInsert(String key, long weight);
+
+    void onRemove(String key);
+
+    // next key to evict while the cache is over its limit, null if nothing is left
+    String victim();
+}
@@ -0,0 +1,82 @@
+package main.java.cache;
+
+// Approximate access counter for TinyLFU admission: a count-min sketch of 4-bit counters packed 16 per long.
+// Every counter is halved once sampleSize increments have been recorded, so old popularity fades out.
+// Not thread-safe - HybridCache only touches it under its eviction lock.
+final class FrequencySketch {
+    private static final long RESET_MASK = 0x7777_7777_7777_7777L;   // clears the top bit of every 4-bit counter after a shift
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    private final long[] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(long expectedEntries) {
+        int size = 1;
+        while (size < Math.max(expectedEntries, 16) && size < (1 << 24)) {
+            size <<= 1;
+        }
+        this.table = new long[size];
+        this.mask = size - 1;
+        this.sampleSize = 10 * size;
+    }
+
+    void increment(String key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(index(hash, i), counterOffset(hash, i));
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    int frequency(String key) {
+        int hash = spread(key.hashCode());
+        int min = 15;
+        for (int i = 0; i < 4; i++) {
+            long word = table[index(hash, i)];
+            int count = (int) ((word >>> counterOffset(hash, i)) & 0xF);
+            min = Math.min(min, count);
+        }
+        return min;
+    }
+
+    private boolean incrementAt(int index, int offset) {
+        long word = table[index];
+        if (((word >>> offset) & 0xF) == 15) {
+            return false;   // saturated
+        }
+        table[index] = word + (1L << offset);
+        return true;
+    }
+
+    // aging: halve all counters
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    private int index(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return (int) h & mask;
+    }
+
+    // one of the 16 nibbles of the word, a different one for each of the 4 hash functions
+    private int counterOffset(int hash, int i) {
+        return (((hash >>> (i << 3)) & 3) + (i << 2)) << 2;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
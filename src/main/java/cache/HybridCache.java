@@ -4,102 +4,294 @@ package main.java.cache;
 // what are we doing here
 // 1. store many cacheEntry objects - 1 for each static file
 // 2. decide if we can serve file from cache memory or from the disk - based on if we can find it in the memory
-// 3. what file to evict/remove when our cache memory is full - use LRU and LCU
-// 4. (optional for now) keep track of performance matrix(hit/miss/eviction)
+// 3. what file to evict/remove when our cache memory is full - W-TinyLFU (or the old LRU+LFU score scan)
+// 4. keep track of performance matrix(hit/miss/eviction)
+//
+// Reads never lock: entries live in a ConcurrentHashMap and a hit is only recorded in a striped read buffer.
+// Inserts, evictions and replaying the recorded hits into the policy happen under one eviction lock,
+// and the policy makes every one of those steps O(1).
+//
+// The limit is either a number of files or (byte budget mode) the total size of the cached bodies.
+// In off-heap mode the bodies live in direct memory slots from a SlabAllocator: they don't count towards
+// the Java heap, never reach old-gen, and acquire() hands them to the socket without a copy back to the heap.
+// If the slabs are too fragmented to give a slot, that one body stays on the heap instead.
 
 
-import java.util.HashMap;
+import java.nio.ByteBuffer;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class HybridCache {
-    private final int cacheLimit;
+
+    public enum Policy {
+        TINY_LFU,   // windowed TinyLFU, O(1) eviction
+        LEGACY      // scan all entries for the worst age/frequency score, O(n) eviction
+    }
+
+    private final long cacheLimit;   // files, or bytes in byte budget mode
+    private final boolean byteBudget;
+    private final SlabAllocator allocator;  // null = bodies stay on the heap
+    private long usedWeight;
     private final Map<String,CacheEntry> cacheMemory;
     private final BloomFilter filter;
+    private final EvictionPolicy policy;
+    // ReentrantLock instead of synchronized: a virtual thread blocked here unmounts instead of pinning its carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ReadBuffer[] readBuffers;
+    // bumped by every invalidation of a path hashing to the slot, so a load that raced with one can't be stored
+    private final AtomicLongArray generations = new AtomicLongArray(64);
 
-    private long hits = 0;
-    private long misses = 0;
-    private long evictions = 0;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
 
 
     public HybridCache(int cacheLimit, BloomFilter filter){
+        this(cacheLimit, filter, Policy.TINY_LFU);
+    }
+
+    public HybridCache(int cacheLimit, BloomFilter filter, Policy policy){
+        this(cacheLimit, false, false, filter, policy);
+    }
+
+    // bounded by the total size of the cached files, optionally stored off-heap
+    public HybridCache(long maxBytes, boolean offHeap, BloomFilter filter, Policy policy){
+        this(maxBytes, true, offHeap, filter, policy);
+    }
+
+    private HybridCache(long cacheLimit, boolean byteBudget, boolean offHeap, BloomFilter filter, Policy policy){
         this.cacheLimit = cacheLimit;
-        this.cacheMemory = new HashMap<>();
+        this.byteBudget = byteBudget;
+        this.cacheMemory = new ConcurrentHashMap<>();
         this.filter = filter;
+
+        // every size class may hold one partly used slab on top of the budget
+        int slabSize = 1024 * 1024;
+        this.allocator = offHeap ? new SlabAllocator(slabSize, cacheLimit + 11L * slabSize) : null;
+
+        long expectedEntries = byteBudget ? Math.max(16, cacheLimit / (8 * 1024)) : cacheLimit;
+        this.policy = policy == Policy.LEGACY
+                ? new ScoreEvictionPolicy(cacheMemory)
+                : new TinyLfuPolicy(cacheLimit, expectedEntries);
+
+        // one read buffer per few cores so concurrent hits rarely CAS on the same counter
+        int stripes = Integer.highestOneBit(Math.min(16, Math.max(1, Runtime.getRuntime().availableProcessors())));
+        this.readBuffers = new ReadBuffer[stripes];
+        for (int i = 0; i < stripes; i++) {
+            readBuffers[i] = new ReadBuffer();
+        }
     }
 
-    public synchronized byte[] getFile(String path){
-        CacheEntry fileCache = cacheMemory.get(path);
-        if(fileCache != null){
-            hits++;
-            fileCache.touch();
+    public byte[] getFile(String path){
+        CacheEntry fileCache = acquire(path);
+        if (fileCache == null) {
+            return null;
+        }
+        try {
             return fileCache.getFileData();
+        } finally {
+            fileCache.release();
         }
+    }
 
-        misses++;
+    // Cache hit without copying: the entry stays valid (even if evicted meanwhile) until the caller
+    // calls release(), typically once the body has been written to the socket
+    public CacheEntry acquire(String path){
+        CacheEntry fileCache = cacheMemory.get(path);
+        if(fileCache != null && fileCache.retain()){
+            hits.increment();
+            recordHit(path);
+            return fileCache;
+        }
+
+        misses.increment();
         return null;
     }
 
-    public synchronized void putFile(String path, byte[] data){
-        if(cacheMemory.size() >= cacheLimit){
-            evict();
-        }
+    // validators of a cached entry without counting a hit or touching the policy, null if not cached
+    public CacheEntry.Validators peekValidators(String path){
+        CacheEntry entry = cacheMemory.get(path);
+        return entry == null ? null : entry.validators();
+    }
 
-        cacheMemory.put(path,new CacheEntry(data));
-        filter.add(path);
+    // variants of one file (e.g. compressed ones) are cached as path#variant, invalidate(path) drops them all
+    public static String variantKey(String path, String variant) {
+        return path + "#" + variant;
     }
 
+    // take this before reading the file and hand it to putResponse: if the file was invalidated in between,
+    // the bytes read may already be stale and are not stored
+    public long generation(String path){
+        return generations.get(generationSlot(path));
+    }
 
-    // to learn various ways to implement evict function
-    private void evict() {
-        // eviction policy: blend LRU + LFU
-        String victim = null;
-        double victimScore = Double.MAX_VALUE;
+    // path and all its variants share a slot, a collision only costs a refused store
+    private int generationSlot(String key) {
+        int variant = key.indexOf('#');
+        String path = variant < 0 ? key : key.substring(0, variant);
+        return path.hashCode() & (generations.length() - 1);
+    }
 
-        for (Map.Entry<String, CacheEntry> e : cacheMemory.entrySet()) {
-            CacheEntry entry = e.getValue();
-            long age = System.nanoTime() - entry.lastAccessTime;
-            int freq = entry.frequency;
+    // response = pre-rendered head + file bytes starting at bodyOffset, closeHead = the head for a closing connection,
+    // generation = generation(path) from before the file was read
+    public void putResponse(String path, byte[] response, int bodyOffset, byte[] closeHead, CacheEntry.Validators validators,
+                            long generation){
+        long weight = !byteBudget ? 1 : allocator != null ? allocator.slotSize(response.length) : response.length;
+        if (weight > cacheLimit) {
+            return;     // would flush the whole cache for one file
+        }
 
-//          score = age / freq → lower = more valuable
+        lock.lock();
+        try {
+            if (generations.get(generationSlot(path)) != generation) {
+                return;     // invalidated while it was being read
+            }
+            drainReadBuffers();
 
-//           Case 1: Age high, Freq high
-//            Meaning: This file was used a lot in the past, but not recently.
-//            Score: Depends on balance → age pushes it up, freq pulls it down.
-//            Effect: Might still survive eviction if its frequency is huge.
-//
-//           Case 2: Age high, Freq low
-//            Meaning: Old file that was rarely used.
-//            Score: Very high (bad candidate).
-//            Effect: Almost always evicted → "cold & useless".
-//
-//           Case 3: Age low, Freq high
-//            Meaning: Recently accessed and also used often.
-//            Score: Very low (good candidate).
-//            Effect: Strongly protected from eviction → "hot & valuable".
-//
-//           Case 4: Age low, Freq low
-//            Meaning: Recently accessed, but not many times overall.
-//            Score: Moderate.
-//            Effect: Stays for now, but if it doesn’t get reused soon, it’ll drift into Case 2.
+            CacheEntry previous = cacheMemory.remove(path);
+            if (previous != null) {
+                removed(path, previous);
+            }
+
+            // the candidate goes into the policy before anything is evicted, so the admission duel can turn
+            // it away in favour of a more popular resident. Its memory is only taken once it is admitted
+            usedWeight += weight;
+            policy.onInsert(path, weight);
+            if (!evictWhileOverLimit(path, weight)) {
+                return;     // rejected
+            }
+
+            cacheMemory.put(path, newEntry(response, bodyOffset, closeHead, validators, weight));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private CacheEntry newEntry(byte[] response, int bodyOffset, byte[] closeHead, CacheEntry.Validators validators, long weight) {
+        if (allocator == null) {
+            return new CacheEntry(ByteBuffer.wrap(response), bodyOffset, closeHead, validators, weight, null);
+        }
+        ByteBuffer slot = allocator.allocate(response.length);
+        if (slot == null) {
+            // every slab still has a live slot (see SlabAllocator): keep this one on the heap, same weight
+            return new CacheEntry(ByteBuffer.wrap(response), bodyOffset, closeHead, validators, weight, null);
+        }
+        slot.put(response).flip();
+        return new CacheEntry(slot, bodyOffset, closeHead, validators, weight, allocator::free);
+    }
+
+    public void invalidateAll(){
+        lock.lock();
+        try {
+            for (int i = 0; i < generations.length(); i++) {
+                generations.incrementAndGet(i);
+            }
+            drainReadBuffers();
+            cacheMemory.entrySet().removeIf(e -> {
+                removed(e.getKey(), e.getValue());
+                return true;
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // drops path and all its variants, e.g. because the file changed on disk.
+    // Readers still holding an entry finish with the old bytes, the next request loads the new file
+    public void invalidate(String path){
+        String variantPrefix = variantKey(path, "");
+        lock.lock();
+        try {
+            generations.incrementAndGet(generationSlot(path));
+            drainReadBuffers();
+            cacheMemory.entrySet().removeIf(e -> {
+                String key = e.getKey();
+                if (key.equals(path) || key.startsWith(variantPrefix)) {
+                    removed(key, e.getValue());
+                    return true;
+                }
+                return false;
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
 
+    // false if the candidate being inserted (known to the policy, not stored yet) was picked as the victim
+    private boolean evictWhileOverLimit(String candidate, long candidateWeight) {
+        boolean admitted = true;
+        while (usedWeight > cacheLimit) {
+            String victim = policy.victim();
+            if (victim == null) {
+                break;
+            }
+            if (admitted && victim.equals(candidate)) {
+                policy.onRemove(victim);
+                usedWeight -= candidateWeight;
+                admitted = false;
+            } else {
+                CacheEntry entry = cacheMemory.remove(victim);
+                if (entry != null) {
+                    removed(victim, entry);
+                } else {
+                    policy.onRemove(victim);
+                }
+            }
+            evictions.increment();
+        }
+        return admitted;
+    }
 
-            double score = (double) age / (freq + 1);
+    // drops the cache's own reference, the memory is freed once no reader holds the entry any more
+    private void removed(String path, CacheEntry entry) {
+        policy.onRemove(path);
+        usedWeight -= entry.weight;
+        entry.release();
+    }
 
-            if (score < victimScore) {
-                victimScore = score;
-                victim = e.getKey();
+    private void recordHit(String path) {
+        ReadBuffer buffer = readBuffers[(int) Thread.currentThread().threadId() & (readBuffers.length - 1)];
+        if (buffer.offer(path) && lock.tryLock()) {
+            // somebody else already draining? then just move on, the hit may get dropped and that's fine
+            try {
+                drainReadBuffers();
+            } finally {
+                lock.unlock();
             }
         }
-        if (victim != null) {
-            cacheMemory.remove(victim);
-            evictions++;
+    }
+
+    private void drainReadBuffers() {
+        for (ReadBuffer buffer : readBuffers) {
+            buffer.drainTo(key -> {
+                if (cacheMemory.containsKey(key)) {
+                    policy.onAccess(key);
+                }
+            });
         }
     }
 
     // metrics
-    public long getHits() { return hits; }
-    public long getMisses() { return misses; }
-    public long getEvictions() { return evictions; }
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getEvictions() { return evictions.sum(); }
+    public double getHitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+    public long getUsedWeight() {
+        lock.lock();
+        try {
+            return usedWeight;
+        } finally {
+            lock.unlock();
+        }
+    }
+    public long getOffHeapReservedBytes() { return allocator == null ? 0 : allocator.getReservedBytes(); }
     public BloomFilter getFilter(){ return this.filter;}
 
 }
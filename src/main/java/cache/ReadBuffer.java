@@ -0,0 +1,46 @@
+package main.java.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+// Lossy ring buffer recording cache hits so readers never take the eviction lock.
+// Many readers offer with a CAS, the thread holding the eviction lock drains. When the buffer is full
+// the hit is simply dropped - the policy only needs a representative sample of accesses.
+final class ReadBuffer {
+    private static final int SIZE = 128;
+    private static final int MASK = SIZE - 1;
+    static final int DRAIN_THRESHOLD = SIZE / 2;
+
+    private final AtomicReferenceArray<String> slots = new AtomicReferenceArray<>(SIZE);
+    private final AtomicLong writeIndex = new AtomicLong();
+    private volatile long readIndex;    // only advanced by the drainer
+
+    // returns true when enough hits are pending that the caller should try to drain
+    boolean offer(String key) {
+        long w = writeIndex.get();
+        long pending = w - readIndex;
+        if (pending >= SIZE) {
+            return true;
+        }
+        if (writeIndex.compareAndSet(w, w + 1)) {
+            slots.lazySet((int) (w & MASK), key);
+        }
+        return pending + 1 >= DRAIN_THRESHOLD;
+    }
+
+    void drainTo(Consumer<String> consumer) {
+        long r = readIndex;
+        long w = writeIndex.get();
+        for (; r < w; r++) {
+            int i = (int) (r & MASK);
+            String key = slots.get(i);
+            if (key == null) {
+                break;  // claimed but not published yet, pick it up next time
+            }
+            slots.lazySet(i, null);
+            consumer.accept(key);
+        }
+        readIndex = r;
+    }
+}
@@ -0,0 +1,77 @@
+package main.java.cache;
+
+import java.util.Map;
+
+// The original policy: scan every entry and evict the one with the worst age/(frequency+1) score.
+// O(n) per eviction - kept to compare hit ratio and throughput against TinyLfuPolicy (cachePolicy=legacy).
+class ScoreEvictionPolicy implements EvictionPolicy {
+    private final Map<String, CacheEntry> entries;
+
+    ScoreEvictionPolicy(Map<String, CacheEntry> entries) {
+        this.entries = entries;
+    }
+
+    @Override
+    public void onAccess(String key) {
+        // recency and frequency live on the CacheEntry itself. Replayed from the read buffers under the
+        // eviction lock, so victim() never sees them half updated
+        CacheEntry entry = entries.get(key);
+        if (entry != null) {
+            entry.touch();
+        }
+    }
+
+    @Override
+    public void onInsert(String key, long weight) {
+    }
+
+    @Override
+    public void onRemove(String key) {
+    }
+
+    @Override
+    public String victim() {
+        // eviction policy: blend LRU + LFU
+        String victim = null;
+        double victimScore = -1;
+        long now = System.nanoTime();
+
+        for (Map.Entry<String, CacheEntry> e : entries.entrySet()) {
+            CacheEntry entry = e.getValue();
+            long age = now - entry.lastAccessTime;
+            int freq = entry.frequency;
+
+//          score = age / freq → lower = more valuable
+
+//           Case 1: Age high, Freq high
+//            Meaning: This file was used a lot in the past, but not recently.
+//            Score: Depends on balance → age pushes it up, freq pulls it down.
+//            Effect: Might still survive eviction if its frequency is huge.
+//
+//           Case 2: Age high, Freq low
+//            Meaning: Old file that was rarely used.
+//            Score: Very high (bad candidate).
+//            Effect: Almost always evicted → "cold & useless".
+//
+//           Case 3: Age low, Freq high
+//            Meaning: Recently accessed and also used often.
+//            Score: Very low (good candidate).
+//            Effect: Strongly protected from eviction → "hot & valuable".
+//
+//           Case 4: Age low, Freq low
+//            Meaning: Recently accessed, but not many times overall.
+//            Score: Moderate.
+//            Effect: Stays for now, but if it doesn’t get reused soon, it’ll drift into Case 2.
+
+
+            double score = (double) age / (freq + 1);
+
+            // highest score = coldest entry (the old version kept the lowest, i.e. evicted the hottest file)
+            if (score > victimScore) {
+                victimScore = score;
+                victim = e.getKey();
+            }
+        }
+        return victim;
+    }
+}
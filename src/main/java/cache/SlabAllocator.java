@@ -0,0 +1,155 @@
+package main.java.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Off-heap storage for cache bodies.
+// Direct memory is reserved in fixed size slabs and every slab is cut into equal slots of one size class
+// (powers of two from MIN_SLOT up to the slab size). Freed slots go back to their slab and are reused, so the
+// cache does not keep calling allocateDirect (which is slow and only freed by GC).
+// Once the cap is reached, a slab whose slots are all free is taken from its class and carved again for the
+// class that needs memory, so a shift in file sizes doesn't leave the memory stuck in the old classes.
+// allocate still fails when every slab holds at least one live slot; the cache keeps such a body on the heap.
+// Bodies bigger than a slab get a dedicated direct buffer. Total reserved memory is capped.
+final class SlabAllocator {
+    private static final int MIN_SLOT = 1024;
+
+    private final int slabSize;
+    private final long maxReserved;
+    private final List<ArrayDeque<Slab>> withFreeSlots;     // per size class, slabs that have a free slot
+    private final Map<ByteBuffer, Slab> owners = new IdentityHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private long reserved;
+
+    private static final class Slab {
+        final ByteBuffer memory;
+        final int sizeClass;
+        final int slots;
+        final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+
+        Slab(ByteBuffer memory, int sizeClass, int slots) {
+            this.memory = memory;
+            this.sizeClass = sizeClass;
+            this.slots = slots;
+        }
+    }
+
+    SlabAllocator(int slabSize, long maxReserved) {
+        this.slabSize = Integer.highestOneBit(Math.max(slabSize, MIN_SLOT));
+        this.maxReserved = maxReserved;
+        int classes = Integer.numberOfTrailingZeros(this.slabSize) - Integer.numberOfTrailingZeros(MIN_SLOT) + 1;
+        this.withFreeSlots = new ArrayList<>(classes);
+        for (int i = 0; i < classes; i++) {
+            withFreeSlots.add(new ArrayDeque<>());
+        }
+    }
+
+    // bytes a body of this length will really occupy, used as its weight in the cache budget
+    long slotSize(int length) {
+        return length > slabSize ? length : Math.max(MIN_SLOT, Integer.highestOneBit(length - 1) << 1);
+    }
+
+    // a cleared slot with capacity >= length, null if the memory cap is reached and no slab is entirely free
+    ByteBuffer allocate(int length) {
+        lock.lock();
+        try {
+            if (length > slabSize) {
+                if (reserved + length > maxReserved) {
+                    return null;
+                }
+                reserved += length;
+                return ByteBuffer.allocateDirect(length);
+            }
+            int sizeClass = sizeClass(length);
+            ArrayDeque<Slab> slabs = withFreeSlots.get(sizeClass);
+            if (slabs.isEmpty() && !carveSlab(sizeClass)) {
+                return null;
+            }
+            Slab slab = slabs.peek();
+            ByteBuffer slot = slab.free.pop();
+            if (slab.free.isEmpty()) {
+                slabs.poll();
+            }
+            return slot.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void free(ByteBuffer slot) {
+        lock.lock();
+        try {
+            if (slot.capacity() > slabSize) {
+                reserved -= slot.capacity();    // dedicated buffer, left to the GC
+                return;
+            }
+            Slab slab = owners.get(slot);
+            if (slab.free.isEmpty()) {
+                withFreeSlots.get(slab.sizeClass).push(slab);
+            }
+            slab.free.push(slot);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // new memory while under the cap, otherwise the memory of a slab nobody uses any more
+    private boolean carveSlab(int sizeClass) {
+        ByteBuffer memory;
+        if (reserved + slabSize <= maxReserved) {
+            reserved += slabSize;
+            memory = ByteBuffer.allocateDirect(slabSize);
+        } else {
+            memory = takeFreeSlab();
+            if (memory == null) {
+                return false;
+            }
+        }
+        int slotSize = MIN_SLOT << sizeClass;
+        Slab slab = new Slab(memory, sizeClass, slabSize / slotSize);
+        for (int offset = 0; offset + slotSize <= slabSize; offset += slotSize) {
+            ByteBuffer slot = memory.slice(offset, slotSize);
+            slab.free.push(slot);
+            owners.put(slot, slab);
+        }
+        withFreeSlots.get(sizeClass).push(slab);
+        return true;
+    }
+
+    // only slabs with a free slot can be entirely free, and there are at most a few of those per class
+    private ByteBuffer takeFreeSlab() {
+        for (ArrayDeque<Slab> slabs : withFreeSlots) {
+            for (Iterator<Slab> it = slabs.iterator(); it.hasNext(); ) {
+                Slab slab = it.next();
+                if (slab.free.size() == slab.slots) {
+                    it.remove();
+                    for (ByteBuffer slot : slab.free) {
+                        owners.remove(slot);
+                    }
+                    return slab.memory;
+                }
+            }
+        }
+        return null;
+    }
+
+    private int sizeClass(int length) {
+        int slot = (int) slotSize(length);
+        return Integer.numberOfTrailingZeros(slot) - Integer.numberOfTrailingZeros(MIN_SLOT);
+    }
+
+    long getReservedBytes() {
+        lock.lock();
+        try {
+            return reserved;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package main.java.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Watches the public directory and keeps HybridCache in line with it:
+// a changed or deleted file is dropped from the cache (with all its compressed variants) so the next
+// request reads the new version from disk, and a new file is added to the Bloom filter so it isn't 404'd.
+// With a CountingBloomFilter deleted files are taken out of the filter as well.
+public class StaticFileWatcher implements Runnable {
+    private final Path publicDir;
+    private final HybridCache cache;
+    // paths currently in the filter - a counting filter must see exactly one add and one remove per path
+    private final Set<String> present = ConcurrentHashMap.newKeySet();
+    private WatchService watchService;
+
+    public StaticFileWatcher(Path publicDir, HybridCache cache) {
+        this.publicDir = publicDir;
+        this.cache = cache;
+    }
+
+    // number of files in the public dir, to size the Bloom filter before it is created
+    public static int countFiles(Path publicDir) {
+        File[] files = publicDir.toFile().listFiles(File::isFile);
+        return files == null ? 0 : files.length;
+    }
+
+    // puts every file that is there right now into the Bloom filter
+    public void scan() {
+        File[] files = publicDir.toFile().listFiles(File::isFile);
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            String path = "/" + f.getName();    // same key the router uses
+            if (present.add(path)) {
+                cache.getFilter().add(path);
+            }
+        }
+    }
+
+    public void start() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        publicDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+        Thread t = new Thread(this, "StaticFileWatcher");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // events were lost, we can't tell what changed
+                        cache.invalidateAll();
+                        continue;
+                    }
+                    if (event.context() instanceof Path changed) {
+                        fileChanged(changed);
+                    }
+                }
+                key.reset();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    private void fileChanged(Path changed) {
+        String path = "/" + changed.getFileName();     // same key the router and the startup scan use
+        cache.invalidate(path);
+        if (Files.isRegularFile(publicDir.resolve(changed))) {
+            if (present.add(path)) {
+                cache.getFilter().add(path);
+            }
+        } else if (present.remove(path) && cache.getFilter() instanceof CountingBloomFilter counting) {
+            counting.remove(path);
+        }
+        System.out.println("Static file changed: " + path);
+    }
+
+    public void stop() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package main.java.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// W-TinyLFU: a small LRU admission window (1%) in front of a segmented LRU main space
+// (probation 20% / protected 80%). The entry that last left the window is the candidate in probation;
+// when the cache is over its limit the candidate and the oldest probation entry compete on their
+// sketch frequency and the less popular one is evicted. Entries demoted from protected are never the
+// candidate, they just queue up in probation again. Every operation is O(1).
+class TinyLfuPolicy implements EvictionPolicy {
+    private final FrequencySketch sketch;
+
+    // insertion ordered, eldest first; value = weight of the entry
+    private final LinkedHashMap<String, Long> window = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Long> probation = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Long> protectedSegment = new LinkedHashMap<>();
+
+    private final long windowMax;
+    private final long protectedMax;
+    private long windowWeight;
+    private long protectedWeight;
+    private String candidate;   // last entry moved from the window to probation, null once promoted or removed
+
+    TinyLfuPolicy(long maxWeight, long expectedEntries) {
+        this.windowMax = Math.max(1, maxWeight / 100);
+        this.protectedMax = (maxWeight - windowMax) * 8 / 10;
+        this.sketch = new FrequencySketch(expectedEntries);
+    }
+
+    @Override
+    public void onAccess(String key) {
+        sketch.increment(key);
+
+        Long weight = window.get(key);
+        if (weight != null) {
+            window.putLast(key, weight);    // move to MRU end
+            return;
+        }
+        weight = probation.remove(key);
+        if (weight != null) {
+            if (key.equals(candidate)) {
+                candidate = null;
+            }
+            // second hit: promote, and push the protected overflow back to probation
+            protectedSegment.putLast(key, weight);
+            protectedWeight += weight;
+            while (protectedWeight > protectedMax && protectedSegment.size() > 1) {
+                Map.Entry<String, Long> eldest = protectedSegment.pollFirstEntry();
+                protectedWeight -= eldest.getValue();
+                probation.putLast(eldest.getKey(), eldest.getValue());
+            }
+            return;
+        }
+        weight = protectedSegment.get(key);
+        if (weight != null) {
+            protectedSegment.putLast(key, weight);
+        }
+    }
+
+    @Override
+    public void onInsert(String key, long weight) {
+        sketch.increment(key);
+        window.putLast(key, weight);
+        windowWeight += weight;
+        while (windowWeight > windowMax && window.size() > 1) {
+            Map.Entry<String, Long> eldest = window.pollFirstEntry();
+            windowWeight -= eldest.getValue();
+            probation.putLast(eldest.getKey(), eldest.getValue());
+            candidate = eldest.getKey();
+        }
+    }
+
+    @Override
+    public void onRemove(String key) {
+        Long weight = window.remove(key);
+        if (weight != null) {
+            windowWeight -= weight;
+            return;
+        }
+        if (probation.remove(key) != null) {
+            if (key.equals(candidate)) {
+                candidate = null;
+            }
+            return;
+        }
+        weight = protectedSegment.remove(key);
+        if (weight != null) {
+            protectedWeight -= weight;
+        }
+    }
+
+    @Override
+    public String victim() {
+        if (candidate != null && probation.size() >= 2) {
+            // TinyLFU admission: the window's victim vs the oldest other probation entry
+            Iterator<String> oldest = probation.keySet().iterator();
+            String victim = oldest.next();
+            if (victim.equals(candidate)) {
+                victim = oldest.next();
+            }
+            return sketch.frequency(candidate) > sketch.frequency(victim) ? victim : candidate;
+        }
+        if (!probation.isEmpty()) {
+            return probation.firstEntry().getKey();
+        }
+        if (!protectedSegment.isEmpty()) {
+            return protectedSegment.firstEntry().getKey();
+        }
+        return window.isEmpty() ? null : window.firstEntry().getKey();
+    }
+}
@@ -1,10 +1,13 @@
 package main.java.config;
 
+import main.java.http.RequestClass;
+
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Locale;
 import java.util.Properties;
 
 public class ServerConfig {
@@ -12,6 +15,33 @@ public class ServerConfig {
     private final int threads;
     private final int maxConnections;
     private final int connectionTimeout;
+    private final String ioMode;
+    private final int eventLoops;
+    private final boolean virtualThreads;
+    private final int maxRequestsPerConnection;
+    private final long zeroCopyThreshold;
+    private final int cacheMaxEntries;
+    private final String cachePolicy;
+    private final long cacheMaxBytes;
+    private final boolean cacheOffHeap;
+    private final boolean compression;
+    private final int compressionMinSize;
+    private final String rateLimitAlgorithm;
+    private final boolean sketchIpLimits;
+    private final boolean admissionControl;
+    private final boolean admissionResponse;
+    private final String rateLimitSharedDir;
+    private final int acceptors;
+    private final int backlog;
+    private final boolean reusePort;
+    private final int readTimeout;
+    private final int asyncTimeout;
+    private final int queueTarget;
+    private final int queueInterval;
+    private final String handoff;
+    private final int ringSize;
+    private final String waitStrategy;
+    private final Properties props;
 
     public ServerConfig(String filename)  {
         Properties props = new Properties();
@@ -31,7 +61,87 @@ public class ServerConfig {
         this.port = parseInt(props, "port", 8080); // default: 8080
         this.threads = parseInt(props, "threads", 10);
         this.maxConnections = parseInt(props, "maxConnections", 50);
+        // ms a connection may wait for the first byte of its next request (the keep-alive idle timeout)
         this.connectionTimeout = parseInt(props, "connectionTimeout", 5000);
+
+        // "blocking" = blocking sockets read on a virtual thread per connection, "nio" = selector event loops;
+        // in both a complete request goes to the worker pool
+        this.ioMode = props.getProperty("ioMode", "blocking").trim();
+        this.eventLoops = parseInt(props, "eventLoops", Runtime.getRuntime().availableProcessors());
+
+        // run every request handler on its own virtual thread instead of the fixed pool of {threads}.
+        // Doesn't affect the blocking mode's connection readers, those are virtual threads either way
+        this.virtualThreads = Boolean.parseBoolean(props.getProperty("virtualThreads", "false").trim());
+
+        // keep-alive: requests served on one connection before it is closed
+        this.maxRequestsPerConnection = parseInt(props, "maxRequestsPerConnection", 100);
+
+        // static files of at least this many bytes are sent with FileChannel.transferTo and never cached
+        this.zeroCopyThreshold = parseLong(props, "zeroCopyThreshold", 64 * 1024);
+
+        // static file cache: number of files kept and eviction policy ("tinylfu" or "legacy")
+        this.cacheMaxEntries = parseInt(props, "cacheMaxEntries", 2);
+        this.cachePolicy = props.getProperty("cachePolicy", "tinylfu").trim();
+
+        // > 0: bound the cache by total body bytes instead of cacheMaxEntries, optionally in direct memory
+        this.cacheMaxBytes = parseLong(props, "cacheMaxBytes", 0);
+        this.cacheOffHeap = Boolean.parseBoolean(props.getProperty("cacheOffHeap", "false").trim());
+
+        // keep gzip/deflate variants of text-like static files of at least compressionMinSize bytes
+        this.compression = Boolean.parseBoolean(props.getProperty("compression", "true").trim());
+        this.compressionMinSize = parseInt(props, "compressionMinSize", 256);
+
+        // "tokenbucket" = the lock based TokenBucket, "gcra" = opt-in lock-free limiters (one CAS per check)
+        this.rateLimitAlgorithm = props.getProperty("rateLimitAlgorithm", "tokenbucket").trim();
+
+        // per-IP limits: "exact" = a limiter per client, "sketch" = constant memory, exact limiters for heavy hitters only
+        this.sketchIpLimits = "sketch".equalsIgnoreCase(props.getProperty("ipLimitMode", "exact").trim());
+
+        // turn connections away in the accept loop while the global or their per-IP limit is exhausted,
+        // with a canned 429 ("429") or by just closing them ("close")
+        this.admissionControl = Boolean.parseBoolean(props.getProperty("admissionControl", "true").trim());
+        this.admissionResponse = !"close".equalsIgnoreCase(props.getProperty("admissionReject", "429").trim());
+
+        // directory for memory-mapped limiter tables shared by all server processes on the host, empty = per process
+        this.rateLimitSharedDir = props.getProperty("rateLimitSharedDir", "").trim();
+
+        // threads accepting connections (nio: event loops that accept) and the listen queue length
+        this.acceptors = parseInt(props, "acceptors", 1);
+        this.backlog = parseInt(props, "backlog", 1024);
+        // SO_REUSEPORT: a listening socket per acceptor, and several server processes can share the port
+        this.reusePort = Boolean.parseBoolean(props.getProperty("reusePort", "false").trim());
+
+        // ms a request may take to arrive completely once its first byte is in
+        this.readTimeout = parseInt(props, "readTimeout", 10000);
+        // ms an AsyncHttpHandler has to complete its response before the client gets a 504
+        this.asyncTimeout = parseInt(props, "asyncTimeout", 30000);
+        // load shedding (CoDel): waits for a worker above queueTarget ms for a whole queueInterval ms get dropped with a 503
+        this.queueTarget = parseInt(props, "queueTarget", 100);
+        this.queueInterval = parseInt(props, "queueInterval", 1000);
+
+        // how requests reach the fixed worker pool: "queue" = the pool's LinkedBlockingQueue, "ring" = workers
+        // claim them from a preallocated lock-free ring; idle ring workers "park", "yield" or "spin"
+        this.handoff = props.getProperty("handoff", "queue").trim();
+        this.ringSize = parseInt(props, "ringSize", 1024);
+        this.waitStrategy = props.getProperty("waitStrategy", "park").trim();
+
+        // per request class (api, static, other): <class>Weight and <class>Workers, read by getClassWeight/getClassWorkers
+        this.props = props;
+    }
+
+    private long parseLong(Properties props, String key, long defaultValue){
+        String value = props.getProperty(key);
+
+        if(value == null){
+            return defaultValue;
+        }
+
+        try{
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + key + ", using default: " + defaultValue);
+            return defaultValue;
+        }
     }
 
     private int parseInt(Properties props, String key, int defaultValue){
@@ -65,4 +175,134 @@ public class ServerConfig {
         return connectionTimeout;
     }
 
+    public String getIoMode() {
+        return ioMode;
+    }
+
+    public boolean isNioMode() {
+        return "nio".equalsIgnoreCase(ioMode);
+    }
+
+    public int getEventLoops() {
+        return eventLoops;
+    }
+
+    public boolean useVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public int getMaxRequestsPerConnection() {
+        return maxRequestsPerConnection;
+    }
+
+    public long getZeroCopyThreshold() {
+        return zeroCopyThreshold;
+    }
+
+    public int getCacheMaxEntries() {
+        return cacheMaxEntries;
+    }
+
+    public String getCachePolicy() {
+        return cachePolicy;
+    }
+
+    public long getCacheMaxBytes() {
+        return cacheMaxBytes;
+    }
+
+    public boolean isCacheOffHeap() {
+        return cacheOffHeap;
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    public int getCompressionMinSize() {
+        return compressionMinSize;
+    }
+
+    public String getRateLimitAlgorithm() {
+        return rateLimitAlgorithm;
+    }
+
+    public boolean isSketchIpLimits() {
+        return sketchIpLimits;
+    }
+
+    public boolean isAdmissionControl() {
+        return admissionControl;
+    }
+
+    // false = rejected connections are closed without a response
+    public boolean isAdmissionResponse() {
+        return admissionResponse;
+    }
+
+    public String getRateLimitSharedDir() {
+        return rateLimitSharedDir;
+    }
+
+    public int getAcceptors() {
+        return acceptors;
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public int getAsyncTimeout() {
+        return asyncTimeout;
+    }
+
+    public int getQueueTarget() {
+        return queueTarget;
+    }
+
+    public int getQueueInterval() {
+        return queueInterval;
+    }
+
+    public boolean isRingHandoff() {
+        return "ring".equalsIgnoreCase(handoff);
+    }
+
+    public int getRingSize() {
+        return ringSize;
+    }
+
+    public String getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    // share of the workers a class gets while several classes are waiting (weighted fair queuing)
+    public int getClassWeight(RequestClass requestClass) {
+        int defaultWeight = switch (requestClass) {
+            case API -> 4;
+            case STATIC -> 2;
+            case OTHER -> 1;
+        };
+        return parseInt(props, requestClass.name().toLowerCase(Locale.ROOT) + "Weight", defaultWeight);
+    }
+
+    // bulkhead: most requests of a class running at once, 0 = no limit of its own.
+    // By default static files can have 3/4 of the threads and 404s 1/4, so the API always has workers left
+    public int getClassWorkers(RequestClass requestClass) {
+        int defaultWorkers = switch (requestClass) {
+            case API -> 0;
+            case STATIC -> Math.max(1, threads * 3 / 4);
+            case OTHER -> Math.max(1, threads / 4);
+        };
+        return parseInt(props, requestClass.name().toLowerCase(Locale.ROOT) + "Workers", defaultWorkers);
+    }
+
 }
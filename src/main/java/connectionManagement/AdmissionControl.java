@@ -0,0 +1,119 @@
+package main.java.connectionManagement;
+
+import main.java.http.ResponseWriter;
+import main.java.rateLimiting.RateLimiter;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// First check on a fresh connection, right in the accept loop, before it is queued, gets a worker or has
+// a single byte parsed:
+//  - more than maxConnections open: turned away with a 503, so overload can't pile up in the queue
+//  - the global or the client's per-IP rate limit already exhausted: turned away with a 429. Only the remote
+//    address is looked at, per-path limits stay with the request handling. Nothing is charged here (see
+//    RateLimiter.admit), the requests of an admitted connection still go through the full check.
+// Every admitted connection must be given back with release() once it is closed.
+public class AdmissionControl {
+    // pre-encoded once, a rejected client costs one write and a close
+    private static final byte[] TOO_MANY_REQUESTS = cannedResponse("429 Too Many Requests");
+    private static final byte[] SERVICE_UNAVAILABLE = cannedResponse("503 Service Unavailable");
+
+    // per accepting thread, only used to swallow what the client already sent
+    private static final ThreadLocal<ByteBuffer> DRAIN = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(4096));
+
+    private final RateLimiter rateLimiter;  // null = no rate check at accept
+    private final boolean sendResponse;     // false = just close
+    private final int maxConnections;       // <= 0 = unlimited
+    private final AtomicInteger open = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder overCapacity = new LongAdder();
+
+    public AdmissionControl(RateLimiter rateLimiter, boolean sendResponse, int maxConnections) {
+        this.rateLimiter = rateLimiter;
+        this.sendResponse = sendResponse;
+        this.maxConnections = maxConnections;
+    }
+
+    private static byte[] cannedResponse(String status) {
+        String body = status + "\n";
+        return (ResponseWriter.head(status, "text/plain", body.length(), false)
+                + "Retry-After: 1" + ResponseWriter.CRLF
+                + ResponseWriter.CRLF
+                + body).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // true = go on with the connection, false = it has been rejected and closed already
+    public boolean admit(SocketChannel channel) {
+        if (open.incrementAndGet() > maxConnections && maxConnections > 0) {
+            release();
+            overCapacity.increment();
+            reject(channel, SERVICE_UNAVAILABLE);
+            return false;
+        }
+        if (rateLimiter == null) {
+            return true;
+        }
+
+        String clientIP;
+        try {
+            clientIP = ((InetSocketAddress) channel.getRemoteAddress()).getAddress().getHostAddress();
+        } catch (IOException e) {
+            release();
+            closeQuietly(channel);     // already gone
+            return false;
+        }
+        if (rateLimiter.admit(clientIP)) {
+            return true;
+        }
+        release();
+        rejected.increment();
+        reject(channel, TOO_MANY_REQUESTS);
+        return false;
+    }
+
+    // an admitted connection has been closed
+    public void release() {
+        open.decrementAndGet();
+    }
+
+    private void reject(SocketChannel channel, byte[] response) {
+        if (sendResponse) {
+            try {
+                channel.configureBlocking(false);   // never let a slow client stall the accept loop
+                // read what already arrived: closing with unread bytes makes the kernel send a RST,
+                // which can throw away the response before the client reads it
+                ByteBuffer drain = DRAIN.get();
+                drain.clear();
+                channel.read(drain);
+                channel.write(ByteBuffer.wrap(response));
+            } catch (IOException e) {
+                // client went away, nothing to tell it
+            }
+        }
+        closeQuietly(channel);
+    }
+
+    public int getOpenConnections() {
+        return open.get();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getOverCapacity() {
+        return overCapacity.sum();
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package main.java.connectionManagement;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Load shedding by sojourn time (CoDel, RFC 8289) for work waiting for a worker.
+// Queue length says little about overload (a burst that drains quickly is fine), the time spent waiting does:
+// as long as waits dip below target at least once per interval the queue is just absorbing bursts. Once they
+// have stayed above target for a whole interval it is a standing queue, and items get dropped at dequeue -
+// one right away, then at interval/sqrt(n) spacing, faster the longer it lasts - until waits are back under target.
+// Dropped items are answered with a 503 instead of waiting longer just to time out on the client side.
+public class CoDel {
+    private final long targetNanos;
+    private final long intervalNanos;
+    private final ReentrantLock lock = new ReentrantLock();   // called from every worker in nio mode
+    private final LongAdder dropped = new LongAdder();
+
+    private long firstAboveTime = 0;    // when waits above target have lasted an interval, 0 = below target
+    private boolean dropping = false;
+    private long dropNext;
+    private int count = 0;              // drops in the current (or last) dropping state
+    private int lastCount = 0;
+
+    public CoDel(long targetNanos, long intervalNanos) {
+        this.targetNanos = targetNanos;
+        this.intervalNanos = intervalNanos;
+    }
+
+    // enqueuedAt = System.nanoTime() when the item was queued, true = shed it
+    public boolean shouldDrop(long enqueuedAt) {
+        long now = System.nanoTime();
+        long sojourn = now - enqueuedAt;
+        lock.lock();
+        try {
+            boolean okToDrop;
+            if (sojourn < targetNanos) {
+                firstAboveTime = 0;
+                okToDrop = false;
+            } else if (firstAboveTime == 0) {
+                firstAboveTime = now + intervalNanos;
+                okToDrop = false;
+            } else {
+                okToDrop = now - firstAboveTime >= 0;
+            }
+
+            if (dropping) {
+                if (!okToDrop) {
+                    dropping = false;
+                    return false;
+                }
+                if (now - dropNext >= 0) {
+                    count++;
+                    dropNext = controlLaw(dropNext);
+                    dropped.increment();
+                    return true;
+                }
+                return false;
+            }
+            if (okToDrop) {
+                dropping = true;
+                // came back soon after the last dropping state: pick up near the rate that worked then
+                int delta = count - lastCount;
+                count = delta > 1 && now - dropNext < 16 * intervalNanos ? delta : 1;
+                lastCount = count;
+                dropNext = controlLaw(now);
+                dropped.increment();
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long controlLaw(long t) {
+        return t + (long) (intervalNanos / Math.sqrt(count));
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+}
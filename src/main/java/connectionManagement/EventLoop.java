@@ -0,0 +1,242 @@
+package main.java.connectionManagement;
+
+import main.java.http.HTTPRequest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// One selector thread multiplexing many connections.
+// The loop only reads and parses bytes until a full request is available and writes back finished responses,
+// the actual request handling is handed to the worker pool through the RequestHandler callback.
+public class EventLoop implements Runnable {
+
+    public interface RequestHandler {
+        void handle(NioConnection connection, HTTPRequest request);
+    }
+
+    private final Selector selector;
+    private final RequestHandler handler;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer scratch = ByteBuffer.allocateDirect(16 * 1024);   // shared by all connections of this loop
+
+    // set only on the loop that owns the listening socket
+    private ServerSocketChannel serverChannel;
+    private EventLoop[] group;
+    private AdmissionControl admission;     // null = admit everything
+    private final AtomicInteger nextLoop = new AtomicInteger(0);
+
+    private final long idleTimeoutNanos;
+    private final long readTimeoutNanos;    // for a request to arrive completely once it has started
+    private long lastIdleSweep = System.nanoTime();
+
+    private volatile boolean running = true;
+
+    public EventLoop(int idleTimeoutMillis, RequestHandler handler) throws IOException {
+        this(idleTimeoutMillis, idleTimeoutMillis, handler);
+    }
+
+    public EventLoop(int idleTimeoutMillis, int readTimeoutMillis, RequestHandler handler) throws IOException {
+        this.selector = Selector.open();
+        this.handler = handler;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.readTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(readTimeoutMillis);
+    }
+
+    // make this loop accept connections and spread them round-robin over the group
+    public void listen(ServerSocketChannel serverChannel, EventLoop[] group) {
+        listen(serverChannel, group, null);
+    }
+
+    // same, but connections the admission check turns away never reach a loop, and the admitted ones are
+    // released to it again when they close
+    public void listen(ServerSocketChannel serverChannel, EventLoop[] group, AdmissionControl admission) {
+        this.serverChannel = serverChannel;
+        this.group = group;
+        this.admission = admission;
+        execute(() -> {
+            try {
+                serverChannel.configureBlocking(false);
+                serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    // run a task on the loop thread (used by workers to hand back responses)
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    private void register(SocketChannel channel, AdmissionControl admission) {
+        execute(() -> {
+            try {
+                channel.configureBlocking(false);
+                String clientIP = ((InetSocketAddress) channel.getRemoteAddress()).getAddress().getHostAddress();
+                NioConnection conn = new NioConnection(channel, this, clientIP, admission);
+                conn.key = channel.register(selector, SelectionKey.OP_READ, conn);
+            } catch (IOException e) {
+                closeQuietly(channel);
+                if (admission != null) {
+                    admission.release();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select(1000);   // wake up at least once a second to close idle connections
+                runTasks();
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else if (key.isReadable()) {
+                            read((NioConnection) key.attachment());
+                        } else if (key.isWritable()) {
+                            write((NioConnection) key.attachment());
+                        }
+                    } catch (RuntimeException e) {
+                        // a handler bug or a pool that rejects work (shutdown) costs this connection, not the loop
+                        System.err.println("Event loop error: " + e);
+                        if (key.attachment() instanceof NioConnection conn) {
+                            conn.close();
+                        }
+                    }
+                }
+                closeIdle();
+            } catch (IOException e) {
+                System.err.println("Event loop error: " + e.getMessage());
+            }
+        }
+        closeAll();
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.err.println("Event loop task failed: " + e);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            if (admission != null && !admission.admit(channel)) {
+                continue;
+            }
+            EventLoop target = group[Math.floorMod(nextLoop.getAndIncrement(), group.length)];
+            target.register(channel, admission);
+        }
+    }
+
+    private void read(NioConnection conn) {
+        try {
+            if (!conn.read(scratch)) {
+                conn.close();
+                return;
+            }
+            conn.lastActivity = System.nanoTime();
+            dispatchNext(conn);
+        } catch (IOException e) {
+            conn.close();
+        }
+    }
+
+    // hands the next buffered request (if complete) to a worker. Requests on one connection are handled
+    // strictly one after another, so pipelined requests get their responses in order
+    private void dispatchNext(NioConnection conn) throws IOException {
+        HTTPRequest request = conn.takeRequest();
+        if (request != null) {
+            // stop reading until the worker has answered this request
+            conn.key.interestOps(0);
+            conn.inFlight = true;
+            conn.requestCount++;
+            handler.handle(conn, request);
+        }
+    }
+
+    private void write(NioConnection conn) {
+        try {
+            if (!conn.write()) {
+                return;
+            }
+            conn.inFlight = false;
+            conn.lastActivity = System.nanoTime();
+            if (!conn.isKeepAlive()) {
+                conn.close();
+                return;
+            }
+            conn.key.interestOps(SelectionKey.OP_READ);
+            dispatchNext(conn);   // a pipelined request may already be buffered
+        } catch (IOException e) {
+            conn.close();
+        }
+    }
+
+    private void closeIdle() {
+        long now = System.nanoTime();
+        if (now - lastIdleSweep < TimeUnit.SECONDS.toNanos(1)) {
+            return;
+        }
+        lastIdleSweep = now;
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof NioConnection conn && !conn.inFlight
+                    && (now - conn.lastActivity > idleTimeoutNanos
+                        // trickling a request in byte by byte doesn't count as activity (slowloris)
+                        || conn.requestStarted != 0 && now - conn.requestStarted > readTimeoutNanos)) {
+                conn.close();
+            }
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof NioConnection conn) {
+                conn.close();
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("Error closing selector: " + e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package main.java.connectionManagement;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Bounded multi-producer multi-consumer queue on a preallocated ring (Vyukov's bounded MPMC queue, the same
+// idea as a Disruptor ring): no locks and no allocation per element. Every slot carries a sequence number
+// telling whose turn it is - a producer may fill slot i at position p when its sequence is p, a consumer
+// may empty it when it is p + 1. Claiming a position is one CAS on tail (producers) or head (consumers);
+// the element itself is published by the release-store of the slot sequence.
+final class MpmcRing<E> {
+    private final Object[] buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();     // next position to take
+    private final AtomicLong tail = new AtomicLong();     // next position to fill
+
+    MpmcRing(int capacity) {
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        this.buffer = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    // false = full
+    boolean offer(E element) {
+        long pos = tail.get();
+        while (true) {
+            int index = (int) pos & mask;
+            long diff = sequences.getAcquire(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    buffer[index] = element;
+                    sequences.setRelease(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();   // another producer got it
+            } else if (diff < 0) {
+                return false;       // the consumer of the previous lap hasn't emptied it yet
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    // null = empty
+    @SuppressWarnings("unchecked")
+    E poll() {
+        long pos = head.get();
+        while (true) {
+            int index = (int) pos & mask;
+            long diff = sequences.getAcquire(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    E element = (E) buffer[index];
+                    buffer[index] = null;
+                    sequences.setRelease(index, pos + mask + 1);    // free for the producer one lap ahead
+                    return element;
+                }
+                pos = head.get();
+            } else if (diff < 0) {
+                return null;        // not filled (yet)
+            } else {
+                pos = head.get();
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return head.get() >= tail.get();
+    }
+
+    int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+}
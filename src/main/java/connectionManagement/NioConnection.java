@@ -0,0 +1,114 @@
+package main.java.connectionManagement;
+
+import main.java.http.HTTPRequest;
+import main.java.http.HttpParser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+// State of one non-blocking client connection, owned by exactly one EventLoop.
+// Only the owning event loop thread touches the buffers - workers hand their response back through respond()
+public class NioConnection {
+    final SocketChannel channel;
+    final EventLoop loop;
+    SelectionKey key;
+    public final String clientIP;
+    private final AdmissionControl admission;     // given the connection back on close, may be null
+    private boolean closed = false;
+
+    private final HttpParser parser = new HttpParser();   // resumable, keeps partial and pipelined requests
+    private ResponseBuffer response;
+    private boolean keepAlive;
+
+    int requestCount = 0;           // requests handed to workers so far on this connection
+    boolean inFlight = false;       // a worker is busy with a request, the idle timer does not run
+    long lastActivity = System.nanoTime();
+    long requestStarted = 0;        // first byte of the request being read arrived, 0 = between requests
+
+    NioConnection(SocketChannel channel, EventLoop loop, String clientIP, AdmissionControl admission) {
+        this.channel = channel;
+        this.loop = loop;
+        this.clientIP = clientIP;
+        this.admission = admission;
+    }
+
+    // read whatever is available, returns false when the client closed the connection
+    boolean read(ByteBuffer scratch) throws IOException {
+        scratch.clear();
+        int n = channel.read(scratch);
+        if (n == -1) {
+            return false;
+        }
+        scratch.flip();
+        if (requestStarted == 0 && scratch.hasRemaining() && parser.isIdle()) {
+            requestStarted = System.nanoTime();
+        }
+        parser.feed(scratch);
+        return true;
+    }
+
+    // the next complete request parsed from what has been read so far, or null
+    HTTPRequest takeRequest() throws IOException {
+        HTTPRequest request = parser.next();
+        if (request != null) {
+            // a pipelined request may already be partly buffered, its clock starts now
+            requestStarted = parser.isIdle() ? 0 : System.nanoTime();
+        }
+        return request;
+    }
+
+    public int getRequestCount() {
+        return requestCount;
+    }
+
+    // called from a worker thread once the response is fully rendered
+    public void respond(ResponseBuffer response, boolean keepAlive) {
+        response.finish();
+        loop.execute(() -> {
+            if (!key.isValid()) {
+                response.release();     // closed while the worker was busy
+                return;
+            }
+            this.response = response;
+            this.keepAlive = keepAlive;
+            key.interestOps(SelectionKey.OP_WRITE);
+        });
+    }
+
+    // returns true once the pending response has been flushed completely
+    boolean write() throws IOException {
+        if (!response.writeTo(channel)) {
+            return false;
+        }
+        response = null;
+        return true;
+    }
+
+    boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (admission != null) {
+            admission.release();
+        }
+        if (response != null) {
+            response.release();
+            response = null;
+        }
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing channel: " + e.getMessage());
+        }
+    }
+}
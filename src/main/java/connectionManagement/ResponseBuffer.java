@@ -0,0 +1,150 @@
+package main.java.connectionManagement;
+
+import main.java.http.ChannelSink;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+// Response rendered by a worker in nio mode and written later by the event loop.
+// It is a list of segments: buffered bytes (headers, small bodies) and file regions that the
+// event loop sends with FileChannel.transferTo as the socket becomes writable, and borrowed buffers
+// (off-heap cache bodies, pooled response buffers) that are written as they are and handed back once sent.
+public class ResponseBuffer extends OutputStream implements ChannelSink {
+    private final List<Object> segments = new ArrayList<>();    // ByteBuffer, FileRegion, BorrowedBuffer or BorrowedBuffers
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream(512);
+    private int current = 0;    // first segment not fully written yet
+
+    private static final class FileRegion {
+        final FileChannel file;
+        long position;
+        long remaining;
+
+        FileRegion(FileChannel file, long position, long count) {
+            this.file = file;
+            this.position = position;
+            this.remaining = count;
+        }
+    }
+
+    private static final class BorrowedBuffer {
+        final ByteBuffer buffer;
+        final Runnable onWritten;
+
+        BorrowedBuffer(ByteBuffer buffer, Runnable onWritten) {
+            this.buffer = buffer;
+            this.onWritten = onWritten;
+        }
+    }
+
+    private static final class BorrowedBuffers {
+        final ByteBuffer[] buffers;
+        final Runnable onWritten;
+
+        BorrowedBuffers(ByteBuffer[] buffers, Runnable onWritten) {
+            this.buffers = buffers;
+            this.onWritten = onWritten;
+        }
+    }
+
+    @Override
+    public void write(int b) {
+        pending.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        pending.write(b, off, len);
+    }
+
+    @Override
+    public void transferFile(FileChannel file, long position, long count) {
+        flushPending();
+        segments.add(new FileRegion(file, position, count));
+    }
+
+    @Override
+    public void writeBuffer(ByteBuffer buffer, Runnable onWritten) {
+        flushPending();
+        segments.add(new BorrowedBuffer(buffer, onWritten));
+    }
+
+    @Override
+    public void writeBuffers(ByteBuffer[] buffers, Runnable onWritten) {
+        flushPending();
+        segments.add(new BorrowedBuffers(buffers, onWritten));
+    }
+
+    // called by the worker when the response is complete
+    void finish() {
+        flushPending();
+    }
+
+    private void flushPending() {
+        if (pending.size() > 0) {
+            segments.add(ByteBuffer.wrap(pending.toByteArray()));
+            pending = new ByteArrayOutputStream(512);
+        }
+    }
+
+    // event loop side: write as much as the socket takes, true once everything is out
+    boolean writeTo(SocketChannel channel) throws IOException {
+        while (current < segments.size()) {
+            Object segment = segments.get(current);
+            if (segment instanceof ByteBuffer buffer) {
+                channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    return false;
+                }
+            } else if (segment instanceof BorrowedBuffer borrowed) {
+                channel.write(borrowed.buffer);
+                if (borrowed.buffer.hasRemaining()) {
+                    return false;
+                }
+                borrowed.onWritten.run();
+            } else if (segment instanceof BorrowedBuffers borrowed) {
+                channel.write(borrowed.buffers);   // gathering, picks up where the last call stopped
+                if (ChannelSink.hasRemaining(borrowed.buffers)) {
+                    return false;
+                }
+                borrowed.onWritten.run();
+            } else {
+                FileRegion region = (FileRegion) segment;
+                long sent = region.file.transferTo(region.position, region.remaining, channel);
+                if (sent == 0 && region.position >= region.file.size()) {
+                    throw new IOException("File shrank while sending");
+                }
+                region.position += sent;
+                region.remaining -= sent;
+                if (region.remaining > 0) {
+                    return false;
+                }
+                region.file.close();
+            }
+            current++;
+        }
+        return true;
+    }
+
+    // closes files and hands back buffers that were never (completely) sent, e.g. because the client went away
+    void release() {
+        for (int i = current; i < segments.size(); i++) {
+            if (segments.get(i) instanceof BorrowedBuffer borrowed) {
+                borrowed.onWritten.run();
+            } else if (segments.get(i) instanceof BorrowedBuffers borrowed) {
+                borrowed.onWritten.run();
+            } else if (segments.get(i) instanceof FileRegion region) {
+                try {
+                    region.file.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        current = segments.size();
+    }
+}
@@ -0,0 +1,157 @@
+package main.java.connectionManagement;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Fixed set of worker threads that claim tasks straight from a preallocated lock-free ring (MpmcRing) - the
+// replacement for newFixedThreadPool's LinkedBlockingQueue, which takes a lock and allocates a node per task
+// and wakes a worker through a Condition for each one. What an idle worker does is the wait strategy:
+//  - BUSY_SPIN: keeps polling, lowest handoff latency, burns a core per idle worker
+//  - YIELD: polls and yields the core in between, for when there are more cores than busy threads
+//  - PARK: parks until a producer unparks it, no CPU while idle, costs a wakeup when work arrives
+public final class RingWorkerPool extends AbstractExecutorService {
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);   // backstop, also notices shutdown
+
+    public enum WaitStrategy {
+        BUSY_SPIN,
+        YIELD,
+        PARK
+    }
+
+    private final MpmcRing<Runnable> ring;
+    private final WaitStrategy waitStrategy;
+    private final Thread[] workers;
+    private final AtomicIntegerArray parked;    // PARK only: 1 while workers[i] is (about to be) parked
+    private volatile boolean shutdown = false;
+
+    public RingWorkerPool(int threads, int ringSize, WaitStrategy waitStrategy, ThreadFactory threadFactory) {
+        this.ring = new MpmcRing<>(Math.max(ringSize, threads));
+        this.waitStrategy = waitStrategy;
+        this.workers = new Thread[threads];
+        this.parked = new AtomicIntegerArray(threads);
+        for (int i = 0; i < threads; i++) {
+            int index = i;
+            workers[i] = threadFactory.newThread(() -> work(index));
+            workers[i].start();
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Worker pool is shut down");
+        }
+        while (!ring.offer(task)) {
+            // full: only for a moment, the scheduler never hands out more than the workers can start
+            Thread.yield();
+        }
+        if (waitStrategy == WaitStrategy.PARK) {
+            // the slot write and the look at parked must not be reordered, or we could miss a worker
+            // that checked the ring just before our offer and is about to park
+            VarHandle.fullFence();
+            // wake one parked worker, a flag per worker instead of a queue: nothing allocated per task
+            for (int i = 0; i < workers.length; i++) {
+                if (parked.get(i) == 1 && parked.compareAndSet(i, 1, 0)) {
+                    LockSupport.unpark(workers[i]);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void work(int index) {
+        Thread self = Thread.currentThread();
+        while (true) {
+            Runnable task = ring.poll();
+            if (task != null) {
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    // an Error too: there is nobody to replace this worker, so it has to survive its tasks
+                    System.err.println("Task failed on " + self.getName() + ": " + t);
+                }
+                continue;
+            }
+            if (shutdown) {
+                return;     // ring drained
+            }
+            switch (waitStrategy) {
+                case BUSY_SPIN -> Thread.onSpinWait();
+                case YIELD -> Thread.yield();
+                case PARK -> {
+                    parked.set(index, 1);
+                    VarHandle.fullFence();
+                    if (ring.isEmpty() && !shutdown) {      // look again, a task may have come in meanwhile
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                    }
+                    parked.set(index, 0);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        List<Runnable> pending = new ArrayList<>();
+        Runnable task;
+        while ((task = ring.poll()) != null) {
+            pending.add(task);
+        }
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        if (!shutdown) {
+            return false;
+        }
+        for (Thread worker : workers) {
+            if (worker.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Thread worker : workers) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                return isTerminated();
+            }
+            TimeUnit.NANOSECONDS.timedJoin(worker, left);
+        }
+        return isTerminated();
+    }
+
+    // tasks handed over but not picked up by a worker yet
+    public int getPending() {
+        return ring.size();
+    }
+}
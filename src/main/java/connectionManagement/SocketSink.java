@@ -0,0 +1,112 @@
+package main.java.connectionManagement;
+
+import main.java.http.ChannelSink;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+
+// Output of a blocking connection: normal writes go through the socket stream, file bodies go
+// straight from the page cache to the socket through the underlying SocketChannel
+public class SocketSink extends OutputStream implements ChannelSink {
+    private final OutputStream out;
+    private final SocketChannel channel;    // null for sockets not created from a channel
+
+    public SocketSink(OutputStream out, SocketChannel channel) {
+        this.out = out;
+        this.channel = channel;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void transferFile(FileChannel file, long position, long count) throws IOException {
+        try (file) {
+            out.flush();    // headers written through the stream must go first
+            if (channel != null) {
+                while (count > 0) {
+                    long sent = file.transferTo(position, count, channel);
+                    if (sent == 0 && position >= file.size()) {
+                        throw new IOException("File shrank while sending");
+                    }
+                    position += sent;
+                    count -= sent;
+                }
+                return;
+            }
+            // no channel: copy in small pieces, still never the whole file on the heap
+            ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+            while (count > 0) {
+                chunk.clear().limit((int) Math.min(chunk.capacity(), count));
+                int n = file.read(chunk, position);
+                if (n < 0) {
+                    throw new IOException("File shrank while sending");
+                }
+                out.write(chunk.array(), 0, n);
+                position += n;
+                count -= n;
+            }
+            out.flush();
+        }
+    }
+
+    @Override
+    public void writeBuffer(ByteBuffer buffer, Runnable onWritten) throws IOException {
+        try {
+            out.flush();
+            if (channel != null) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                return;
+            }
+            byte[] chunk = new byte[Math.min(buffer.remaining(), 64 * 1024)];
+            while (buffer.hasRemaining()) {
+                int n = Math.min(chunk.length, buffer.remaining());
+                buffer.get(chunk, 0, n);
+                out.write(chunk, 0, n);
+            }
+            out.flush();
+        } finally {
+            onWritten.run();
+        }
+    }
+
+    @Override
+    public void writeBuffers(ByteBuffer[] buffers, Runnable onWritten) throws IOException {
+        try {
+            out.flush();
+            if (channel != null) {
+                while (ChannelSink.hasRemaining(buffers)) {
+                    channel.write(buffers);
+                }
+                return;
+            }
+            for (ByteBuffer buffer : buffers) {
+                while (buffer.hasRemaining()) {
+                    byte[] chunk = new byte[Math.min(buffer.remaining(), 64 * 1024)];
+                    buffer.get(chunk);
+                    out.write(chunk);
+                }
+            }
+            out.flush();
+        } finally {
+            onWritten.run();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package main.java.connectionManagement;
+
+import main.java.http.RequestClass;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Decides which queued request gets a worker next, per RequestClass:
+//  - weighted fair queuing: while several classes have requests waiting, each gets workers in proportion to
+//    its weight (start-time fair queuing: a request is tagged max(virtual time, its class's last tag) + 1/weight,
+//    the lowest tag goes first), so a flood in one class can't push the others to the back of one long queue
+//  - bulkheads: a class never has more than its maxWorkers requests running, the rest of the pool stays free
+//    for the other classes even if every request of that class blocks (slow static downloads vs /api)
+// Requests are only handed to the executor when they can start right away, so its own queue stays empty and
+// the order is decided here. The executor must be able to run maxTotal tasks at once.
+public class WeightedFairScheduler {
+    private static final RequestClass[] CLASSES = RequestClass.values();
+
+    private record Task(Runnable work, double tag) {
+    }
+
+    private final Executor executor;
+    private final int maxTotal;
+    private final double[] cost;            // 1 / weight per class
+    private final int[] maxWorkers;
+    private final int[] running;
+    private final double[] lastTag;
+    private final List<ArrayDeque<Task>> queues;
+    private double virtualTime = 0;
+    private int runningTotal = 0;
+    private int queuedTotal = 0;
+
+    // guarded by a ReentrantLock rather than synchronized so virtual threads never pin on it
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // weights and maxWorkers indexed by RequestClass ordinal
+    public WeightedFairScheduler(Executor executor, int maxTotal, int[] weights, int[] maxWorkers) {
+        this.executor = executor;
+        this.maxTotal = maxTotal;
+        this.cost = new double[CLASSES.length];
+        this.maxWorkers = new int[CLASSES.length];
+        for (int i = 0; i < CLASSES.length; i++) {
+            cost[i] = 1.0 / Math.max(1, weights[i]);
+            this.maxWorkers[i] = maxWorkers[i] > 0 ? Math.min(maxWorkers[i], maxTotal) : maxTotal;
+        }
+        this.running = new int[CLASSES.length];
+        this.lastTag = new double[CLASSES.length];
+        this.queues = new ArrayList<>(CLASSES.length);
+        for (int i = 0; i < CLASSES.length; i++) {
+            queues.add(new ArrayDeque<>());
+        }
+    }
+
+    public void submit(RequestClass requestClass, Runnable work) {
+        int c = requestClass.ordinal();
+        lock.lock();
+        try {
+            double tag = Math.max(virtualTime, lastTag[c]) + cost[c];
+            lastTag[c] = tag;
+            queues.get(c).add(new Task(work, tag));
+            queuedTotal++;
+        } finally {
+            lock.unlock();
+        }
+        dispatch();
+    }
+
+    // starts queued tasks while workers are free, lowest tag first among the classes below their bulkhead
+    private void dispatch() {
+        while (true) {
+            Task next;
+            int c;
+            double previousVirtualTime;
+            lock.lock();
+            try {
+                if (runningTotal >= maxTotal) {
+                    return;
+                }
+                c = -1;
+                for (int i = 0; i < CLASSES.length; i++) {
+                    Task head = queues.get(i).peek();
+                    if (head != null && running[i] < maxWorkers[i] && (c < 0 || head.tag < queues.get(c).peek().tag)) {
+                        c = i;
+                    }
+                }
+                if (c < 0) {
+                    return;
+                }
+                next = queues.get(c).poll();
+                queuedTotal--;
+                running[c]++;
+                runningTotal++;
+                previousVirtualTime = virtualTime;
+                virtualTime = next.tag - cost[c];   // its start tag
+            } finally {
+                lock.unlock();
+            }
+            int started = c;
+            try {
+                executor.execute(() -> {
+                    try {
+                        next.work.run();
+                    } finally {
+                        finished(started);
+                    }
+                });
+            } catch (RuntimeException | Error e) {
+                // rejected (pool shut down, no thread to be had): the task goes back to the head of its queue
+                // and the counts with it, the next submit or finished task tries again
+                requeue(next, started, previousVirtualTime);
+                System.err.println("Could not start request: " + e);
+                return;
+            }
+        }
+    }
+
+    private void requeue(Task task, int c, double previousVirtualTime) {
+        lock.lock();
+        try {
+            queues.get(c).addFirst(task);
+            queuedTotal++;
+            running[c]--;
+            runningTotal--;
+            if (virtualTime == task.tag - cost[c]) {
+                virtualTime = previousVirtualTime;  // unless another start moved it on meanwhile
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void finished(int c) {
+        lock.lock();
+        try {
+            running[c]--;
+            runningTotal--;
+        } finally {
+            lock.unlock();
+        }
+        dispatch();
+    }
+
+    // requests waiting for a worker
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queuedTotal;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueued(RequestClass requestClass) {
+        lock.lock();
+        try {
+            return queues.get(requestClass.ordinal()).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
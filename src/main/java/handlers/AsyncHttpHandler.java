@@ -0,0 +1,15 @@
+package main.java.handlers;
+
+import main.java.http.HTTPRequest;
+import main.java.http.HttpResponse;
+
+import java.util.concurrent.CompletionStage;
+
+// Handler of a dynamic route whose response isn't ready right away (a backend call, a remote service).
+// It starts the work and returns; the worker goes back to the pool while the stage is pending and the
+// response is written by whichever thread completes it - so a few workers can have many slow calls open.
+// handle() itself must not block, and the stage may complete on any thread.
+// A stage that fails is answered with a 500, one that takes longer than asyncTimeout with a 504.
+public interface AsyncHttpHandler {
+    CompletionStage<HttpResponse> handle(HTTPRequest request);
+}
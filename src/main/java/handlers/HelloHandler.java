@@ -1,14 +1,11 @@
 package main.java.handlers;
 
 import main.java.http.HTTPRequest;
-import java.io.PrintWriter;
+import main.java.http.HttpResponse;
 
-public class HelloHandler implements RouteHandler {
+public class HelloHandler implements HttpHandler {
     @Override
-    public void handle(HTTPRequest request, PrintWriter out) {
-        out.println("HTTP/1.1 200 OK");
-        out.println("Content-Type: text/plain; charset=UTF-8");
-        out.println();
-        out.println("Hello from dynamic route!");
+    public HttpResponse handle(HTTPRequest request) {
+        return HttpResponse.text(200, "text/plain; charset=UTF-8", "Hello from dynamic route!\n");
     }
 }
@@ -0,0 +1,27 @@
+package main.java.handlers;
+
+import main.java.http.HTTPRequest;
+import main.java.http.HttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+// Handler of a dynamic route: returns the response instead of printing it, the server encodes and sends it
+// in one write (see HttpResponse).
+public interface HttpHandler {
+    HttpResponse handle(HTTPRequest request);
+
+    // adapter for a RouteHandler that prints its own response: what it prints is captured and re-framed
+    // (see HttpResponse.preEncoded), so a handler that leaves out Content-Length still keeps the connection usable
+    static HttpHandler of(RouteHandler handler) {
+        return request -> {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(bytes, StandardCharsets.UTF_8));
+            handler.handle(request, out);
+            out.flush();
+            return HttpResponse.preEncoded(bytes.toByteArray());
+        };
+    }
+}
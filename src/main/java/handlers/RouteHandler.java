@@ -4,6 +4,8 @@ import main.java.http.HTTPRequest;
 
 import java.io.PrintWriter;
 
+// Older handler style that prints status line, headers and body itself. Still supported through
+// HttpHandler.of, new handlers implement HttpHandler.
 public interface RouteHandler {
     void handle(HTTPRequest request, PrintWriter out);
 }
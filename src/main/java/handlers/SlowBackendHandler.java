@@ -0,0 +1,22 @@
+package main.java.handlers;
+
+import main.java.http.HTTPRequest;
+import main.java.http.HttpResponse;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+// Stands in for a call to a slow backend: answers after a fixed delay without holding a thread meanwhile
+public class SlowBackendHandler implements AsyncHttpHandler {
+    private static final long DELAY_MS = 200;
+    private final Executor backend = CompletableFuture.delayedExecutor(DELAY_MS, TimeUnit.MILLISECONDS);
+
+    @Override
+    public CompletionStage<HttpResponse> handle(HTTPRequest request) {
+        long started = System.nanoTime();
+        return CompletableFuture.supplyAsync(() -> HttpResponse.text(200, "application/json; charset=UTF-8",
+                "{ \"backendMs\": " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " }\n"), backend);
+    }
+}
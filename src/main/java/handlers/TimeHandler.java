@@ -1,15 +1,12 @@
 package main.java.handlers;
 
 import main.java.http.HTTPRequest;
+import main.java.http.HttpResponse;
 
-import java.io.PrintWriter;
-
-public class TimeHandler implements RouteHandler {
+public class TimeHandler implements HttpHandler {
     @Override
-    public void handle(HTTPRequest request, PrintWriter out) {
-        out.println("HTTP/1.1 200 OK");
-        out.println("Content-Type: application/json; charset=UTF-8");
-        out.println();
-        out.println("{ \"time\": \"" + java.time.LocalDateTime.now() + "\" }");
+    public HttpResponse handle(HTTPRequest request) {
+        return HttpResponse.text(200, "application/json; charset=UTF-8",
+                "{ \"time\": \"" + java.time.LocalDateTime.now() + "\" }\n");
     }
 }
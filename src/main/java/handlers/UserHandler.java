@@ -1,12 +1,12 @@
 package main.java.handlers;
 
 import main.java.http.HTTPRequest;
+import main.java.http.HttpResponse;
 
-import java.io.PrintWriter;
 import java.util.HashMap;
 import java.util.Map;
 
-public class UserHandler implements RouteHandler{
+public class UserHandler implements HttpHandler {
     private final Map<Integer,String> users;
 
     public UserHandler() {
@@ -24,7 +24,7 @@ public class UserHandler implements RouteHandler{
         users.put(10, "Julia");
     }
     @Override
-    public void handle(HTTPRequest request, PrintWriter out) {
+    public HttpResponse handle(HTTPRequest request) {
         // Extract dynamic param from request (assume request has a getParams() method)
         Map<String, String> params = request.getParams();
         String userIdStr = params.get("userId");
@@ -34,16 +34,13 @@ public class UserHandler implements RouteHandler{
             int userId = Integer.parseInt(userIdStr);
             String userName = users.get(userId);
             if (userName != null) {
-                out.println("HTTP/1.1 200 OK");
-                out.println("Content-Type: application/json; charset=UTF-8");
-                out.println();
-                out.println("Fetched user: ID=" + userId + ", Name=" + userName);
-            } else {
-                out.println("User not found!");
+                return HttpResponse.text(200, "application/json; charset=UTF-8",
+                        "Fetched user: ID=" + userId + ", Name=" + userName + "\n");
             }
+            return HttpResponse.text(404, "text/plain; charset=UTF-8", "User not found!\n");
 
         } catch (NumberFormatException e) {
-            out.println("Invalid user ID!");
+            return HttpResponse.text(400, "text/plain; charset=UTF-8", "Invalid user ID!\n");
         }
     }
 }
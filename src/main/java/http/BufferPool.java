@@ -0,0 +1,42 @@
+package main.java.http;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Direct buffers that HttpResponse encodes into, reused instead of allocated per response: allocateDirect is
+// slow and the memory only comes back when the GC gets around to the buffer object. A socket write from a
+// direct buffer also skips the copy the JDK makes for a heap buffer. Fixed size - a response that doesn't fit
+// takes several and is sent with one gathering write anyway.
+final class BufferPool {
+    static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_POOLED = 256;     // at most 4MB kept around, the rest goes to the GC
+
+    private static final ConcurrentLinkedQueue<ByteBuffer> FREE = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooled = new AtomicInteger();
+
+    private BufferPool() {
+    }
+
+    static ByteBuffer acquire() {
+        ByteBuffer buffer = FREE.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        pooled.decrementAndGet();
+        return buffer.clear();
+    }
+
+    static void release(ByteBuffer[] buffers) {
+        for (ByteBuffer buffer : buffers) {
+            if (!buffer.isDirect() || buffer.capacity() != BUFFER_SIZE) {
+                continue;   // not one of ours
+            }
+            if (pooled.incrementAndGet() <= MAX_POOLED) {
+                FREE.offer(buffer);
+            } else {
+                pooled.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package main.java.http;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Parses a "Range: bytes=..." header against a file length (RFC 9110 14.1.2).
+// Ranges that can't be satisfied are dropped, overlapping or touching ones are merged.
+final class ByteRanges {
+    // more ranges than this in one request is not a seek, it's someone trying to make us do lots of tiny writes
+    static final int MAX_RANGES = 16;
+
+    // inclusive, like in Content-Range
+    record Range(long start, long end) {
+        long length() {
+            return end - start + 1;
+        }
+
+        String contentRange(long total) {
+            return "bytes " + start + "-" + end + "/" + total;
+        }
+    }
+
+    private ByteRanges() {
+    }
+
+    // null = header is not usable (syntax we don't understand, too many ranges) and must be ignored -> 200.
+    // empty list = valid syntax but nothing satisfiable -> 416.
+    static List<Range> parse(String header, long length) {
+        if (header == null || !header.regionMatches(true, 0, "bytes=", 0, 6)) {
+            return null;
+        }
+        String[] specs = header.substring(6).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+
+        List<Range> ranges = new ArrayList<>(specs.length);
+        for (String spec : specs) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            try {
+                long start;
+                long end;
+                if (dash == 0) {
+                    // suffix range: the last n bytes
+                    long suffix = Long.parseLong(spec.substring(1));
+                    if (suffix <= 0 || length == 0) {
+                        continue;
+                    }
+                    start = Math.max(0, length - suffix);
+                    end = length - 1;
+                } else {
+                    start = Long.parseLong(spec.substring(0, dash));
+                    end = dash == spec.length() - 1 ? Long.MAX_VALUE : Long.parseLong(spec.substring(dash + 1));
+                    if (start < 0 || end < start) {
+                        return null;
+                    }
+                    if (start >= length) {
+                        continue;   // starts past the end of the file
+                    }
+                    end = Math.min(end, length - 1);
+                }
+                ranges.add(new Range(start, end));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return coalesce(ranges);
+    }
+
+    private static List<Range> coalesce(List<Range> ranges) {
+        if (ranges.size() < 2) {
+            return ranges;
+        }
+        List<Range> sorted = new ArrayList<>(ranges);
+        sorted.sort((a, b) -> Long.compare(a.start, b.start));
+        List<Range> merged = new ArrayList<>(sorted.size());
+        Range current = sorted.get(0);
+        for (int i = 1; i < sorted.size(); i++) {
+            Range next = sorted.get(i);
+            if (next.start <= current.end + 1) {
+                current = new Range(current.start, Math.max(current.end, next.end));
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+}
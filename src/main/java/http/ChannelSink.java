@@ -0,0 +1,32 @@
+package main.java.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Implemented by response outputs that can move file bytes to the socket without copying them through the heap.
+// StaticRouter checks for it on the raw OutputStream it is given and falls back to a plain copy otherwise.
+public interface ChannelSink {
+
+    // sends count bytes of file starting at position (FileChannel.transferTo, i.e. sendfile on Linux).
+    // The sink owns the channel from now on and closes it once the bytes are out.
+    void transferFile(FileChannel file, long position, long count) throws IOException;
+
+    // sends the remaining bytes of buffer (e.g. an off-heap cache slot) without copying it first.
+    // onWritten runs exactly once when the sink no longer needs the buffer, sent or not.
+    void writeBuffer(ByteBuffer buffer, Runnable onWritten) throws IOException;
+
+    // sends the remaining bytes of all buffers in order with gathering writes (writev), so head and body leave
+    // in one system call instead of one per buffer. onWritten runs exactly once, as for writeBuffer.
+    void writeBuffers(ByteBuffer[] buffers, Runnable onWritten) throws IOException;
+
+    // true while a gathering write still has bytes left (any buffer, an empty body may come last)
+    static boolean hasRemaining(ByteBuffer[] buffers) {
+        for (ByteBuffer buffer : buffers) {
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,215 @@
+package main.java.http;
+
+import main.java.handlers.AsyncHttpHandler;
+import main.java.handlers.HttpHandler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Read-only routing automaton compiled from a TrieRouter.
+//
+// The trie is fixed once routes are loaded, so every node gets a flat open-addressing table of its static
+// children instead of a ConcurrentHashMap. Lookups walk the path in place: a segment is the region between
+// two '/' and is hashed and compared straight on the path String - no split(), no substring, no params map.
+// A successful lookup returns the shared Route of the matching node; param values are only cut out of the
+// path when a handler asks for them (Route.params).
+//
+// Priority per segment: static child > :param child > *wildcard (catch-all for the rest of the path).
+// If a static branch dead-ends deeper down, the param and then the wildcard branch are tried.
+public final class CompiledRouter {
+    private final Node root;
+
+    CompiledRouter(TrieNode trieRoot) {
+        this.root = compile(trieRoot, new ArrayList<>());
+    }
+
+    // returns the matching route or null, allocates nothing
+    public Route find(String path) {
+        int end = path.indexOf('?');
+        if (end < 0) {
+            end = path.length();
+        }
+        Node node = match(root, path, 0, end);
+        return node == null ? null : node.route;
+    }
+
+    private static Node match(Node node, String path, int pos, int end) {
+        while (pos < end && path.charAt(pos) == '/') {
+            pos++;  // empty segments are ignored, like TrieRouter does
+        }
+        if (pos == end) {
+            return node.route != null ? node : null;
+        }
+        int segEnd = pos;
+        while (segEnd < end && path.charAt(segEnd) != '/') {
+            segEnd++;
+        }
+
+        Node child = node.staticChild(path, pos, segEnd);
+        if (child != null) {
+            Node found = match(child, path, segEnd, end);
+            if (found != null) {
+                return found;
+            }
+        }
+        if (node.paramChild != null) {
+            Node found = match(node.paramChild, path, segEnd, end);
+            if (found != null) {
+                return found;
+            }
+        }
+        if (node.wildcardChild != null && node.wildcardChild.route != null) {
+            return node.wildcardChild;
+        }
+        return null;
+    }
+
+    private static Node compile(TrieNode trieNode, List<String> templateSegments) {
+        Map<String, TrieNode> children = trieNode.getChildren();
+        String[] keys = new String[tableSize(children.size())];
+        Node[] nodes = new Node[keys.length];
+        int mask = keys.length - 1;
+        for (Map.Entry<String, TrieNode> e : children.entrySet()) {
+            templateSegments.add(e.getKey());
+            int i = spread(e.getKey().hashCode()) & mask;
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = e.getKey();
+            nodes[i] = compile(e.getValue(), templateSegments);
+            templateSegments.remove(templateSegments.size() - 1);
+        }
+
+        Node paramChild = null;
+        if (trieNode.getParamChild() != null) {
+            templateSegments.add(":" + trieNode.getParamChild().getParamName());
+            paramChild = compile(trieNode.getParamChild(), templateSegments);
+            templateSegments.remove(templateSegments.size() - 1);
+        }
+        Node wildcardChild = null;
+        if (trieNode.getWildcardChild() != null) {
+            templateSegments.add("*" + trieNode.getWildcardChild().getParamName());
+            wildcardChild = compile(trieNode.getWildcardChild(), templateSegments);
+            templateSegments.remove(templateSegments.size() - 1);
+        }
+
+        Route route = trieNode.isEndOfRoute()
+                ? new Route(trieNode.getHandler(), trieNode.getAsyncHandler(), templateSegments.toArray(new String[0]))
+                : null;
+        return new Node(keys, nodes, mask, paramChild, wildcardChild, route);
+    }
+
+    // power of two with load factor <= 0.5, at least 1 slot
+    private static int tableSize(int entries) {
+        int size = 1;
+        while (size < entries * 2) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Node {
+        final String[] keys;
+        final Node[] children;
+        final int mask;
+        final Node paramChild;
+        final Node wildcardChild;
+        final Route route;
+
+        Node(String[] keys, Node[] children, int mask, Node paramChild, Node wildcardChild, Route route) {
+            this.keys = keys;
+            this.children = children;
+            this.mask = mask;
+            this.paramChild = paramChild;
+            this.wildcardChild = wildcardChild;
+            this.route = route;
+        }
+
+        // hash the segment chars the same way String.hashCode does, then probe the table
+        Node staticChild(String path, int from, int to) {
+            int h = 0;
+            for (int i = from; i < to; i++) {
+                h = 31 * h + path.charAt(i);
+            }
+            int len = to - from;
+            for (int i = spread(h) & mask; keys[i] != null; i = (i + 1) & mask) {
+                String key = keys[i];
+                if (key.length() == len && path.regionMatches(from, key, 0, len)) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    // A route template like /api/users/:userId, shared by every request that matches it
+    public static final class Route {
+        private final HttpHandler handler;            // exactly one of the two is set
+        private final AsyncHttpHandler asyncHandler;
+        private final String[] segments;    // "users", ":userId", "*rest"
+        private final String template;
+        private final boolean hasParams;
+
+        Route(HttpHandler handler, AsyncHttpHandler asyncHandler, String[] segments) {
+            this.handler = handler;
+            this.asyncHandler = asyncHandler;
+            this.segments = segments;
+            this.template = "/" + String.join("/", segments);
+            boolean params = false;
+            for (String s : segments) {
+                params |= s.startsWith(":") || s.startsWith("*");
+            }
+            this.hasParams = params;
+        }
+
+        public HttpHandler handler() {
+            return handler;
+        }
+
+        public AsyncHttpHandler asyncHandler() {
+            return asyncHandler;
+        }
+
+        public String template() {
+            return template;
+        }
+
+        // walks the template and the path side by side and cuts out the param values
+        public Map<String, String> params(String path) {
+            if (!hasParams) {
+                return Collections.emptyMap();
+            }
+            Map<String, String> params = new HashMap<>(4);
+            int end = path.indexOf('?');
+            if (end < 0) {
+                end = path.length();
+            }
+            int pos = 0;
+            for (String segment : segments) {
+                while (pos < end && path.charAt(pos) == '/') {
+                    pos++;
+                }
+                if (segment.startsWith("*")) {
+                    params.put(segment.substring(1), path.substring(pos, end));
+                    break;
+                }
+                int segEnd = path.indexOf('/', pos);
+                if (segEnd < 0 || segEnd > end) {
+                    segEnd = end;
+                }
+                if (segment.startsWith(":")) {
+                    params.put(segment.substring(1), path.substring(pos, segEnd));
+                }
+                pos = segEnd;
+            }
+            return params;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package main.java.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Content codings the static file cache keeps precompressed variants for.
+// Compression runs once when a variant is loaded into the cache, hits just send the stored bytes.
+public enum ContentEncoding {
+    GZIP("gzip"),
+    DEFLATE("deflate");     // zlib wrapped, which is what "deflate" means in HTTP
+
+    private final String token;
+
+    ContentEncoding(String token) {
+        this.token = token;
+    }
+
+    public String token() {
+        return token;
+    }
+
+    // picks the coding with the highest q value in Accept-Encoding, gzip on a tie, null = send it uncompressed
+    public static ContentEncoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return null;
+        }
+        double gzip = -1;     // -1 = not listed
+        double deflate = -1;
+        double any = 0;
+        for (String part : acceptEncoding.split(",")) {
+            int semi = part.indexOf(';');
+            String coding = (semi < 0 ? part : part.substring(0, semi)).trim();
+            double q = semi < 0 ? 1 : qValue(part.substring(semi + 1));
+            if (coding.equalsIgnoreCase("gzip") || coding.equalsIgnoreCase("x-gzip")) {
+                gzip = Math.max(gzip, q);
+            } else if (coding.equalsIgnoreCase("deflate")) {
+                deflate = Math.max(deflate, q);
+            } else if (coding.equals("*")) {
+                any = q;
+            }
+        }
+        // "*" covers the codings that are not listed explicitly
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+        if (gzip <= 0 && deflate <= 0) {
+            return null;
+        }
+        return gzip >= deflate ? GZIP : DEFLATE;
+    }
+
+    private static double qValue(String params) {
+        for (String param : params.split(";")) {
+            param = param.trim();
+            if (param.startsWith("q=") || param.startsWith("Q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    public byte[] compress(byte[] data) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+        if (this == GZIP) {
+            // the stream owns its deflater and ends it on close, only the level is changed
+            try (OutputStream out = new GZIPOutputStream(bytes) {{ def.setLevel(Deflater.BEST_COMPRESSION); }}) {
+                out.write(data);
+            } catch (IOException e) {
+                throw new RuntimeException(e);  // in-memory streams don't fail
+            }
+            return bytes.toByteArray();
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (OutputStream out = new DeflaterOutputStream(bytes, deflater)) {
+            out.write(data);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            deflater.end();     // native memory, don't wait for the GC
+        }
+        return bytes.toByteArray();
+    }
+
+    // text-like types are worth compressing, images/archives/fonts usually are compressed already
+    public static boolean isCompressible(String mimeType) {
+        return mimeType.startsWith("text/")
+                || mimeType.contains("javascript")
+                || mimeType.contains("json")
+                || mimeType.contains("xml")
+                || mimeType.equals("image/svg+xml");
+    }
+}
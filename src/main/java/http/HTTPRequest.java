@@ -2,6 +2,7 @@ package main.java.http;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -12,6 +13,16 @@ public class HTTPRequest {
     private Map<String, String> headers;
     private String body;
     private Map<String,String> params;
+    private CompiledRouter.Route route;     // matched dynamic route, params are derived from it lazily
+    private boolean paramsResolved;
+    private Boolean keepAlive;      // null = decide from version + Connection header
+
+    // set by HttpParser: headers and body stay as bytes until somebody asks for them
+    private RequestHeaders rawHeaders;
+    private boolean headersMaterialized;
+    private byte[] rawBody;
+    private int rawBodyOffset;
+    private int rawBodyLength;
 
     public HTTPRequest() {
         this.headers = new HashMap<>();
@@ -205,6 +216,11 @@ public class HTTPRequest {
     public String getMethod() {
         return method;
     }
+
+    // the response is the GET one without its body
+    public boolean isHead() {
+        return "HEAD".equals(method);
+    }
     public void setMethod(String method) {
         this.method = method;
     }
@@ -224,23 +240,108 @@ public class HTTPRequest {
     }
 
     public Map<String, String> getHeaders() {
+        if (rawHeaders != null && !headersMaterialized) {
+            rawHeaders.copyInto(headers);
+            headersMaterialized = true;
+        }
         return headers;
     }
+
+    // header names are case-insensitive, the map keeps them as the client sent them
+    public String getHeader(String name) {
+        if (rawHeaders != null) {
+            String raw = rawHeaders.get(name);
+            if (raw != null) {
+                return raw;
+            }
+        }
+        String value = headers.get(name);
+        if (value != null) {
+            return value;
+        }
+        for (Map.Entry<String, String> e : headers.entrySet()) {
+            if (e.getKey().equalsIgnoreCase(name)) {
+                return e.getValue();
+            }
+        }
+        return null;
+    }
+
+    // HTTP/1.1 connections are persistent unless the client says "Connection: close",
+    // HTTP/1.0 ones only when the client asks for "Connection: keep-alive"
+    public boolean isKeepAlive() {
+        if (keepAlive != null) {
+            return keepAlive;
+        }
+        String connection = getHeader("Connection");
+        if ("HTTP/1.1".equals(httpVersion)) {
+            return connection == null || !connection.equalsIgnoreCase("close");
+        }
+        return connection != null && connection.equalsIgnoreCase("keep-alive");
+    }
+
+    // the server can force a close (e.g. max requests per connection reached)
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
     public void setHeaders(String name, String value) {
         this.headers.put(name, value);
     }
 
     public String getBody() {
+        if (body == null && rawBody != null) {
+            body = new String(rawBody, rawBodyOffset, rawBodyLength, StandardCharsets.UTF_8);
+        }
         return body;
     }
+
+    // body exactly as received (Content-Length counts bytes, not chars)
+    public byte[] getBodyBytes() {
+        if (rawBody != null) {
+            byte[] copy = new byte[rawBodyLength];
+            System.arraycopy(rawBody, rawBodyOffset, copy, 0, rawBodyLength);
+            return copy;
+        }
+        return body == null ? null : body.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public RequestHeaders getRawHeaders() {
+        return rawHeaders;
+    }
+
+    void setRawHeaders(RequestHeaders rawHeaders) {
+        this.rawHeaders = rawHeaders;
+    }
+
+    void setRawBody(byte[] data, int offset, int length) {
+        if (length > 0) {
+            this.rawBody = data;
+            this.rawBodyOffset = offset;
+            this.rawBodyLength = length;
+        }
+    }
+
     public void setBody(String body) {
         this.body = body;
     }
 
     public Map<String, String> getParams() {
+        if (route != null && !paramsResolved) {
+            params.putAll(route.params(path));
+            paramsResolved = true;
+        }
         return params;
     }
 
+    public CompiledRouter.Route getRoute() {
+        return route;
+    }
+
+    public void setRoute(CompiledRouter.Route route) {
+        this.route = route;
+        this.paramsResolved = false;
+    }
+
     public void setParams(Map<String, String> params) {
         this.params = params;
     }
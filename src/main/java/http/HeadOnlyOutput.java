@@ -0,0 +1,95 @@
+package main.java.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+// Output for a HEAD request: lets the status line and headers through and drops everything after the blank line
+// that ends them. Handlers write their GET response as usual, so the client gets exactly the Content-Length and
+// validators a GET would - but no body, which it doesn't expect and which would misframe the next response on a
+// persistent connection. One response per instance.
+public class HeadOnlyOutput extends OutputStream implements ChannelSink {
+    private static final byte[] END_OF_HEAD = {'\r', '\n', '\r', '\n'};
+
+    private final OutputStream out;
+    private final ChannelSink sink;
+    private int matched = 0;            // bytes of the CRLFCRLF seen so far
+    private boolean headDone = false;
+
+    public <S extends OutputStream & ChannelSink> HeadOnlyOutput(S out) {
+        this.out = out;
+        this.sink = out;
+    }
+
+    // how many bytes from data's position on still belong to the head
+    private int headLength(ByteBuffer data) {
+        if (headDone) {
+            return 0;
+        }
+        for (int i = data.position(); i < data.limit(); i++) {
+            byte b = data.get(i);
+            matched = b == END_OF_HEAD[matched] ? matched + 1 : (b == '\r' ? 1 : 0);
+            if (matched == END_OF_HEAD.length) {
+                headDone = true;
+                return i + 1 - data.position();
+            }
+        }
+        return data.remaining();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (headLength(ByteBuffer.wrap(new byte[]{(byte) b})) > 0) {
+            out.write(b);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        int n = headLength(ByteBuffer.wrap(b, off, len));
+        if (n > 0) {
+            out.write(b, off, n);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void transferFile(FileChannel file, long position, long count) throws IOException {
+        try (file) {
+            out.flush();    // file bodies always come after the head, nothing of it to send
+        }
+    }
+
+    @Override
+    public void writeBuffer(ByteBuffer buffer, Runnable onWritten) throws IOException {
+        int n = headLength(buffer);
+        if (n == 0) {
+            onWritten.run();
+            return;
+        }
+        sink.writeBuffer(buffer.duplicate().limit(buffer.position() + n), onWritten);
+    }
+
+    @Override
+    public void writeBuffers(ByteBuffer[] buffers, Runnable onWritten) throws IOException {
+        List<ByteBuffer> head = new ArrayList<>(buffers.length);
+        for (ByteBuffer buffer : buffers) {
+            int n = headLength(buffer);
+            if (n > 0) {
+                head.add(buffer.duplicate().limit(buffer.position() + n));
+            }
+        }
+        if (head.isEmpty()) {
+            onWritten.run();
+            return;
+        }
+        sink.writeBuffers(head.toArray(new ByteBuffer[0]), onWritten);
+    }
+}
@@ -0,0 +1,417 @@
+package main.java.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Resumable HTTP/1.1 request parser working on raw bytes.
+//
+// Bytes are fed in whatever pieces the socket delivers them (feed), next() then continues from where the
+// previous call stopped and returns a request once one is complete. Nothing is split into String[]:
+// the request line and headers are scanned in place and only offsets are recorded (see RequestHeaders).
+// Bytes after a complete request stay buffered, so pipelined requests come out of the following next() calls.
+public class HttpParser {
+    private static final int MAX_HEADER_BYTES = 64 * 1024;
+    private static final int MAX_HEADERS = 100;
+    private static final int MAX_BODY_BYTES = 8 * 1024 * 1024;
+    private static final String[] METHODS = {"GET", "POST", "PUT", "DELETE", "HEAD", "OPTIONS", "PATCH"};
+
+    private enum State {
+        REQUEST_LINE, HEADERS, BODY, CHUNK_SIZE, CHUNK_DATA, CHUNK_END, TRAILERS
+    }
+
+    private State state = State.REQUEST_LINE;
+
+    private byte[] buf = new byte[4096];
+    private int start = 0;      // first byte of the current request
+    private int pos = 0;        // scan cursor
+    private int limit = 0;      // end of buffered bytes
+
+    // current request
+    private HTTPRequest request;
+    private int[] headerOffsets = new int[4 * 16];
+    private int headerCount;
+    private long contentLength;
+    private boolean chunked;
+    private int bodyStart;
+    private long chunkRemaining;
+    private byte[] chunkedBody;
+    private int chunkedLength;
+    private int trailersStart;
+    private int trailerCount;
+
+    public void feed(ByteBuffer in) {
+        int n = in.remaining();
+        ensureCapacity(n);
+        in.get(buf, limit, n);
+        limit += n;
+    }
+
+    public void feed(byte[] src, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(src, offset, buf, limit, length);
+        limit += length;
+    }
+
+    // true while no byte of a next request has been received (a clean place for the client to hang up)
+    public boolean isIdle() {
+        return state == State.REQUEST_LINE && start == limit;
+    }
+
+    // returns the next complete request or null if more bytes are needed
+    public HTTPRequest next() throws IOException {
+        while (true) {
+            switch (state) {
+                case REQUEST_LINE -> {
+                    int eol = findLineEnd();
+                    if (eol < 0) {
+                        checkHeaderSize();
+                        return null;
+                    }
+                    if (lineLength(eol) == 0) {
+                        // stray CRLF between pipelined requests is allowed
+                        pos = eol + 1;
+                        start = pos;
+                        continue;
+                    }
+                    parseRequestLine(pos, contentEnd(eol));
+                    pos = eol + 1;
+                    state = State.HEADERS;
+                }
+                case HEADERS -> {
+                    int eol = findLineEnd();
+                    if (eol < 0) {
+                        checkHeaderSize();
+                        return null;
+                    }
+                    int lineStart = pos;
+                    int lineEnd = contentEnd(eol);
+                    pos = eol + 1;
+                    if (lineEnd == lineStart) {
+                        endOfHeaders();
+                    } else {
+                        parseHeaderLine(lineStart, lineEnd);
+                    }
+                }
+                case BODY -> {
+                    if (limit - bodyStart < contentLength) {
+                        return null;
+                    }
+                    pos = bodyStart + (int) contentLength;
+                    request.setRawBody(buf, bodyStart, (int) contentLength);
+                    return complete();
+                }
+                case CHUNK_SIZE -> {
+                    int eol = findLineEnd();
+                    if (eol < 0) {
+                        checkLineSize();
+                        return null;
+                    }
+                    chunkRemaining = parseHex(pos, contentEnd(eol));
+                    pos = eol + 1;
+                    // size lines and CRLFs stay in buf next to the data, don't let them outgrow a body
+                    if (pos - bodyStart - chunkedLength > MAX_BODY_BYTES) {
+                        throw new IOException("Chunk framing too large");
+                    }
+                    if (chunkRemaining == 0) {
+                        trailersStart = pos;
+                        trailerCount = 0;
+                        state = State.TRAILERS;
+                    } else {
+                        state = State.CHUNK_DATA;
+                    }
+                }
+                case CHUNK_DATA -> {
+                    int available = (int) Math.min(chunkRemaining, limit - pos);
+                    appendChunk(pos, available);
+                    pos += available;
+                    chunkRemaining -= available;
+                    if (chunkRemaining > 0) {
+                        return null;
+                    }
+                    state = State.CHUNK_END;
+                }
+                case CHUNK_END -> {
+                    int eol = findLineEnd();
+                    if (eol < 0) {
+                        checkLineSize();
+                        return null;
+                    }
+                    pos = eol + 1;
+                    state = State.CHUNK_SIZE;
+                }
+                case TRAILERS -> {
+                    // trailers are read and ignored, the body ends at the first empty line.
+                    // They are headers after all and get the same limits
+                    int eol = findLineEnd();
+                    if (eol < 0) {
+                        checkTrailerSize(limit);
+                        return null;
+                    }
+                    boolean empty = lineLength(eol) == 0;
+                    pos = eol + 1;
+                    if (empty) {
+                        request.setRawBody(chunkedBody, 0, chunkedLength);
+                        return complete();
+                    }
+                    if (++trailerCount > MAX_HEADERS) {
+                        throw new IOException("Too many trailers");
+                    }
+                    checkTrailerSize(pos);     // pipelined bytes after the line don't count
+                }
+            }
+        }
+    }
+
+    private void parseRequestLine(int from, int to) throws IOException {
+        int sp1 = indexOf(from, to, (byte) ' ');
+        int sp2 = sp1 < 0 ? -1 : indexOf(sp1 + 1, to, (byte) ' ');
+        if (sp1 <= from || sp2 <= sp1 + 1 || sp2 == to - 1) {
+            throw new IOException("Malformed request line");
+        }
+        request = new HTTPRequest();
+        request.setMethod(method(from, sp1));
+        request.setPath(new String(buf, sp1 + 1, sp2 - sp1 - 1, StandardCharsets.ISO_8859_1));
+        request.setHttpVersion(version(sp2 + 1, to));
+        headerCount = 0;
+        contentLength = 0;
+        chunked = false;
+    }
+
+    private void parseHeaderLine(int from, int to) throws IOException {
+        int colon = indexOf(from, to, (byte) ':');
+        if (colon <= from) {
+            return;     // not a header, ignore like the old parser did
+        }
+        if (headerCount == MAX_HEADERS) {
+            throw new IOException("Too many headers");
+        }
+        int nameEnd = colon;
+        while (nameEnd > from && isSpace(buf[nameEnd - 1])) nameEnd--;
+        int valueStart = colon + 1;
+        while (valueStart < to && isSpace(buf[valueStart])) valueStart++;
+        int valueEnd = to;
+        while (valueEnd > valueStart && isSpace(buf[valueEnd - 1])) valueEnd--;
+
+        if (4 * headerCount + 4 > headerOffsets.length) {
+            int[] bigger = new int[headerOffsets.length * 2];
+            System.arraycopy(headerOffsets, 0, bigger, 0, headerOffsets.length);
+            headerOffsets = bigger;
+        }
+        int o = 4 * headerCount++;
+        headerOffsets[o] = from;
+        headerOffsets[o + 1] = nameEnd;
+        headerOffsets[o + 2] = valueStart;
+        headerOffsets[o + 3] = valueEnd;
+
+        if (regionEqualsIgnoreCase(from, nameEnd, "Content-Length")) {
+            contentLength = parseDecimal(valueStart, valueEnd);
+            if (contentLength > MAX_BODY_BYTES) {
+                throw new IOException("Request body too large");
+            }
+        } else if (regionEqualsIgnoreCase(from, nameEnd, "Transfer-Encoding")) {
+            chunked = regionContainsIgnoreCase(valueStart, valueEnd, "chunked");
+        }
+    }
+
+    private void endOfHeaders() {
+        request.setRawHeaders(new RequestHeaders(buf, Arrays.copyOf(headerOffsets, 4 * headerCount), headerCount));
+        bodyStart = pos;
+        if (chunked) {
+            chunkedBody = new byte[1024];
+            chunkedLength = 0;
+            state = State.CHUNK_SIZE;
+        } else {
+            state = State.BODY;
+        }
+    }
+
+    // hands the finished request out. The request keeps a reference to the current buffer (its header views
+    // point into it), so the parser continues with a fresh buffer holding only the pipelined leftover
+    private HTTPRequest complete() {
+        HTTPRequest done = request;
+        int leftover = limit - pos;
+        byte[] next = new byte[Math.max(4096, leftover)];
+        System.arraycopy(buf, pos, next, 0, leftover);
+        buf = next;
+        start = 0;
+        pos = 0;
+        limit = leftover;
+        request = null;
+        chunkedBody = null;
+        state = State.REQUEST_LINE;
+        return done;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (limit + extra <= buf.length) {
+            return;
+        }
+        int needed = limit - start + extra;
+        if (start > 0 && request == null && needed <= buf.length) {
+            // nothing references the buffer yet, just slide the unconsumed bytes to the front
+            System.arraycopy(buf, start, buf, 0, limit - start);
+            pos -= start;
+            limit -= start;
+            start = 0;
+            return;
+        }
+        byte[] bigger = new byte[Math.max(buf.length * 2, limit + extra)];
+        System.arraycopy(buf, 0, bigger, 0, limit);
+        buf = bigger;
+    }
+
+    private void checkHeaderSize() throws IOException {
+        if (limit - start > MAX_HEADER_BYTES) {
+            throw new IOException("Request header too large");
+        }
+    }
+
+    // chunk size and chunk end lines: the same bound a header line has, the body before them doesn't count
+    private void checkLineSize() throws IOException {
+        if (limit - pos > MAX_HEADER_BYTES) {
+            throw new IOException("Chunk line too long");
+        }
+    }
+
+    private void checkTrailerSize(int end) throws IOException {
+        if (end - trailersStart > MAX_HEADER_BYTES) {
+            throw new IOException("Request trailers too large");
+        }
+    }
+
+    private void appendChunk(int from, int length) throws IOException {
+        if (chunkedLength + length > MAX_BODY_BYTES) {
+            throw new IOException("Request body too large");
+        }
+        if (chunkedLength + length > chunkedBody.length) {
+            byte[] bigger = new byte[Math.max(chunkedBody.length * 2, chunkedLength + length)];
+            System.arraycopy(chunkedBody, 0, bigger, 0, chunkedLength);
+            chunkedBody = bigger;
+        }
+        System.arraycopy(buf, from, chunkedBody, chunkedLength, length);
+        chunkedLength += length;
+    }
+
+    // -------------------- byte helpers --------------------
+
+    private int findLineEnd() {
+        for (int i = pos; i < limit; i++) {
+            if (buf[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // end of the line content, dropping the CR of a CRLF
+    private int contentEnd(int eol) {
+        return eol > pos && buf[eol - 1] == '\r' ? eol - 1 : eol;
+    }
+
+    private int lineLength(int eol) {
+        return contentEnd(eol) - pos;
+    }
+
+    private int indexOf(int from, int to, byte b) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private long parseDecimal(int from, int to) throws IOException {
+        if (from == to) {
+            throw new IOException("Invalid Content-Length");
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9 || value > MAX_BODY_BYTES) {
+                throw new IOException("Invalid Content-Length");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private long parseHex(int from, int to) throws IOException {
+        long value = 0;
+        int digits = 0;
+        for (int i = from; i < to && buf[i] != ';'; i++) {     // chunk extensions after ';' are ignored
+            int digit = Character.digit(buf[i], 16);
+            if (digit < 0) {
+                if (isSpace(buf[i])) continue;
+                throw new IOException("Invalid chunk size");
+            }
+            value = (value << 4) | digit;
+            if (++digits > 8) {
+                throw new IOException("Invalid chunk size");
+            }
+        }
+        if (digits == 0) {
+            throw new IOException("Invalid chunk size");
+        }
+        return value;
+    }
+
+    private boolean regionEqualsIgnoreCase(int from, int to, String s) {
+        if (to - from != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (toLower(buf[from + i]) != toLower((byte) s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean regionContainsIgnoreCase(int from, int to, String s) {
+        for (int i = from; i + s.length() <= to; i++) {
+            if (regionEqualsIgnoreCase(i, i + s.length(), s)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // common methods and versions map to constants, so most requests allocate no String for them
+    private String method(int from, int to) {
+        for (String m : METHODS) {
+            if (regionEquals(from, to, m)) {
+                return m;
+            }
+        }
+        return new String(buf, from, to - from, StandardCharsets.ISO_8859_1);
+    }
+
+    private String version(int from, int to) {
+        if (regionEquals(from, to, "HTTP/1.1")) return "HTTP/1.1";
+        if (regionEquals(from, to, "HTTP/1.0")) return "HTTP/1.0";
+        return new String(buf, from, to - from, StandardCharsets.ISO_8859_1);
+    }
+
+    private boolean regionEquals(int from, int to, String s) {
+        if (to - from != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (buf[from + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    static byte toLower(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + 32) : b;
+    }
+}
@@ -0,0 +1,282 @@
+package main.java.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// A complete response as a value: status code, headers and body. Handlers build one and return it, the server
+// encodes it into pooled direct buffers and sends status line, headers and body with a single gathering write.
+// Content-Length and Connection are always filled in here from the body and the request, so a handler can't
+// get them out of sync with a persistent connection.
+//
+//     return HttpResponse.of(200).contentType("text/plain; charset=UTF-8").body("Hello\n");
+//
+// preEncoded() takes the bytes a legacy RouteHandler printed itself (see HttpHandler.of) and re-frames them the
+// same way, whatever Content-Length or Connection the handler wrote.
+public final class HttpResponse {
+    private static final byte[] EMPTY = new byte[0];
+
+    private final int status;
+    private final List<String> headerNames = new ArrayList<>(4);
+    private final List<String> headerValues = new ArrayList<>(4);
+    private byte[] body = EMPTY;
+    private boolean unframed = false;   // body length unknown (legacy chunked output): no Content-Length, then close
+
+    private HttpResponse(int status) {
+        this.status = status;
+    }
+
+    public static HttpResponse of(int status) {
+        if (status < 100 || status > 599) {
+            throw new RuntimeException("Invalid status code: " + status);
+        }
+        return new HttpResponse(status);
+    }
+
+    // plain text or JSON in one line
+    public static HttpResponse text(int status, String contentType, String body) {
+        return of(status).contentType(contentType).body(body);
+    }
+
+    // status line, headers and body as printed by a legacy handler (lines may end in CRLF or just LF).
+    // Status, headers and body are taken over, Content-Length and Connection are the server's again. Output
+    // that isn't an HTTP response becomes a 500
+    public static HttpResponse preEncoded(byte[] response) {
+        int lineStart = 0;
+        int status = -1;
+        HttpResponse parsed = null;
+        while (true) {
+            int eol = indexOf(response, (byte) '\n', lineStart);
+            if (eol < 0) {
+                break;      // no end of head
+            }
+            int lineEnd = eol > lineStart && response[eol - 1] == '\r' ? eol - 1 : eol;
+            String line = new String(response, lineStart, lineEnd - lineStart, StandardCharsets.ISO_8859_1);
+            lineStart = eol + 1;
+            if (status < 0) {
+                status = parseStatusLine(line);
+                if (status < 0) {
+                    break;
+                }
+                parsed = new HttpResponse(status);
+                continue;
+            }
+            if (line.isEmpty()) {
+                parsed.body = Arrays.copyOfRange(response, lineStart, response.length);
+                return parsed;
+            }
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;   // not a header, ignored like the request parser does
+            }
+            String name = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            if (name.equalsIgnoreCase("Content-Length") || name.equalsIgnoreCase("Connection")) {
+                continue;
+            }
+            if (name.equalsIgnoreCase("Transfer-Encoding")) {
+                parsed.unframed = true;     // body is in its own framing, pass it on and end with the connection
+            }
+            parsed.headerNames.add(name);
+            parsed.headerValues.add(value);
+        }
+        System.err.println("Legacy handler wrote no valid HTTP response");
+        return text(500, "text/plain", "500 Internal Server Error\n");
+    }
+
+    public HttpResponse contentType(String contentType) {
+        return header("Content-Type", contentType);
+    }
+
+    public HttpResponse cacheControl(String cacheControl) {
+        return header("Cache-Control", cacheControl);
+    }
+
+    public HttpResponse retryAfter(int seconds) {
+        return header("Retry-After", Integer.toString(seconds));
+    }
+
+    // sets a header, replacing one of the same name (names are case-insensitive)
+    public HttpResponse header(String name, String value) {
+        if (name.equalsIgnoreCase("Content-Length") || name.equalsIgnoreCase("Connection")) {
+            throw new RuntimeException(name + " is set by the server");
+        }
+        if (!isToken(name) || value.indexOf('\r') >= 0 || value.indexOf('\n') >= 0) {
+            throw new RuntimeException("Invalid header: " + name);
+        }
+        for (int i = 0; i < headerNames.size(); i++) {
+            if (headerNames.get(i).equalsIgnoreCase(name)) {
+                headerValues.set(i, value);
+                return this;
+            }
+        }
+        headerNames.add(name);
+        headerValues.add(value);
+        return this;
+    }
+
+    public HttpResponse body(String body) {
+        return body(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public HttpResponse body(byte[] body) {
+        this.body = body;
+        return this;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    // null if not set
+    public String getHeader(String name) {
+        for (int i = 0; i < headerNames.size(); i++) {
+            if (headerNames.get(i).equalsIgnoreCase(name)) {
+                return headerValues.get(i);
+            }
+        }
+        return null;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    // writes the response for request. On a ChannelSink (both connection modes) that is one gathering write of
+    // pooled direct buffers; any other stream gets the bytes copied. A failed write ends the connection.
+    public void send(HTTPRequest request, PrintWriter out, OutputStream rawOut) {
+        out.flush();    // whatever was printed before must go first
+        if (unframed && request != null) {
+            request.setKeepAlive(false);
+        }
+        boolean keepAlive = request != null && request.isKeepAlive();
+        try {
+            byte[] head = head(keepAlive);
+            if (rawOut instanceof ChannelSink sink) {
+                ByteBuffer[] buffers = encode(head);
+                sink.writeBuffers(buffers, () -> BufferPool.release(buffers));
+            } else {
+                rawOut.write(head);
+                rawOut.write(body);
+                rawOut.flush();
+            }
+        } catch (IOException e) {
+            if (request != null) {
+                request.setKeepAlive(false);
+            }
+            System.err.println("Error sending response: " + e.getMessage());
+        }
+    }
+
+    private byte[] head(boolean keepAlive) {
+        StringBuilder head = new StringBuilder(128);
+        head.append("HTTP/1.1 ").append(status).append(' ').append(reason(status)).append(ResponseWriter.CRLF);
+        for (int i = 0; i < headerNames.size(); i++) {
+            head.append(headerNames.get(i)).append(": ").append(headerValues.get(i)).append(ResponseWriter.CRLF);
+        }
+        if (!unframed) {
+            head.append("Content-Length: ").append(body.length).append(ResponseWriter.CRLF);
+        }
+        if (!keepAlive) {
+            head.append("Connection: close").append(ResponseWriter.CRLF);
+        }
+        head.append(ResponseWriter.CRLF);
+        return head.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    // head and body packed back to back into as few pooled buffers as they fit in, each flipped for writing
+    private ByteBuffer[] encode(byte[] head) {
+        int total = head.length + body.length;
+        ByteBuffer[] buffers = new ByteBuffer[(total + BufferPool.BUFFER_SIZE - 1) / BufferPool.BUFFER_SIZE];
+        int index = 0;
+        buffers[0] = BufferPool.acquire();
+        for (byte[] part : new byte[][]{head, body}) {
+            int offset = 0;
+            while (offset < part.length) {
+                if (!buffers[index].hasRemaining()) {
+                    buffers[++index] = BufferPool.acquire();
+                }
+                int n = Math.min(part.length - offset, buffers[index].remaining());
+                buffers[index].put(part, offset, n);
+                offset += n;
+            }
+        }
+        for (ByteBuffer buffer : buffers) {
+            buffer.flip();
+        }
+        return buffers;
+    }
+
+    private static boolean isToken(String name) {
+        if (name.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c <= ' ' || c >= 127 || "()<>@,;:\\\"/[]?={}".indexOf(c) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // "HTTP/1.1 404 Not Found" -> 404, -1 if it isn't a status line
+    private static int parseStatusLine(String line) {
+        if (!line.startsWith("HTTP/") || line.length() < 12 || line.charAt(8) != ' ') {
+            return -1;
+        }
+        int code = 0;
+        for (int i = 9; i < 12; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            code = code * 10 + (c - '0');
+        }
+        return code >= 100 && code <= 599 ? code : -1;
+    }
+
+    private static int indexOf(byte[] bytes, byte b, int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static String reason(int status) {
+        return switch (status) {
+            case 100 -> "Continue";
+            case 200 -> "OK";
+            case 201 -> "Created";
+            case 202 -> "Accepted";
+            case 204 -> "No Content";
+            case 206 -> "Partial Content";
+            case 301 -> "Moved Permanently";
+            case 302 -> "Found";
+            case 304 -> "Not Modified";
+            case 400 -> "Bad Request";
+            case 401 -> "Unauthorized";
+            case 403 -> "Forbidden";
+            case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed";
+            case 408 -> "Request Timeout";
+            case 409 -> "Conflict";
+            case 413 -> "Content Too Large";
+            case 416 -> "Range Not Satisfiable";
+            case 429 -> "Too Many Requests";
+            case 500 -> "Internal Server Error";
+            case 501 -> "Not Implemented";
+            case 503 -> "Service Unavailable";
+            case 504 -> "Gateway Timeout";
+            default -> status < 200 ? "Informational" : status < 300 ? "OK" : status < 400 ? "Redirection"
+                    : status < 500 ? "Client Error" : "Server Error";
+        };
+    }
+}
@@ -0,0 +1,10 @@
+package main.java.http;
+
+// What kind of work a request is, decided from the request line alone (see Router.classify).
+// Workers are shared out between the classes by WeightedFairScheduler, so e.g. slow static downloads
+// can't take every worker away from the API.
+public enum RequestClass {
+    API,        // dynamic routes
+    STATIC,     // static files, can be large and slow to send
+    OTHER       // matches nothing, a cheap 404
+}
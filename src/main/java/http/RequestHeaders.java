@@ -0,0 +1,70 @@
+package main.java.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+// Read-only view over the raw header bytes of one request.
+// The parser only records where each name and value starts and ends, Strings are created when someone asks for them.
+public class RequestHeaders {
+    private final byte[] data;
+    private final int[] offsets;    // nameStart, nameEnd, valueStart, valueEnd per header
+    private final int count;
+
+    RequestHeaders(byte[] data, int[] offsets, int count) {
+        this.data = data;
+        this.offsets = offsets;
+        this.count = count;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public String name(int i) {
+        return new String(data, offsets[4 * i], offsets[4 * i + 1] - offsets[4 * i], StandardCharsets.ISO_8859_1);
+    }
+
+    public String value(int i) {
+        return new String(data, offsets[4 * i + 2], offsets[4 * i + 3] - offsets[4 * i + 2], StandardCharsets.ISO_8859_1);
+    }
+
+    // case-insensitive lookup straight on the bytes, only the matching value is turned into a String
+    public String get(String name) {
+        int i = indexOf(name);
+        return i < 0 ? null : value(i);
+    }
+
+    public boolean contains(String name) {
+        return indexOf(name) >= 0;
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < count; i++) {
+            if (nameEquals(i, name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    boolean nameEquals(int i, String name) {
+        int start = offsets[4 * i];
+        int len = offsets[4 * i + 1] - start;
+        if (len != name.length()) {
+            return false;
+        }
+        for (int j = 0; j < len; j++) {
+            if (HttpParser.toLower(data[start + j]) != HttpParser.toLower((byte) name.charAt(j))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // materialize everything, used by HTTPRequest.getHeaders() for code that still wants a Map
+    void copyInto(Map<String, String> target) {
+        for (int i = 0; i < count; i++) {
+            target.putIfAbsent(name(i), value(i));
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package main.java.http;
+
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+// Helpers for writing a status line + headers that keep a persistent connection in sync:
+// every response carries an exact Content-Length and "Connection: close" when the server will hang up afterwards
+public final class ResponseWriter {
+    public static final String CRLF = "\r\n";
+
+    private ResponseWriter() {
+    }
+
+    // writes status line and the common headers, the caller may add more headers and must end them with endHeaders()
+    public static void writeHead(PrintWriter out, HTTPRequest request, String status, String contentType, long contentLength) {
+        out.print(head(status, contentType, contentLength, request != null && request.isKeepAlive()));
+    }
+
+    // the same status line + headers as writeHead, as a String (no blank line yet)
+    public static String head(String status, String contentType, long contentLength, boolean keepAlive) {
+        return "HTTP/1.1 " + status + CRLF
+                + "Content-Type: " + contentType + CRLF
+                + "Content-Length: " + contentLength + CRLF
+                + (keepAlive ? "" : "Connection: close" + CRLF);
+    }
+
+    public static void writeHeader(PrintWriter out, String name, Object value) {
+        out.print(name + ": " + value + CRLF);
+    }
+
+    public static void endHeaders(PrintWriter out) {
+        out.print(CRLF);
+        out.flush();
+    }
+
+    // complete text response in one go
+    public static void send(PrintWriter out, HTTPRequest request, String status, String contentType, String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        writeHead(out, request, status, contentType, bytes.length);
+        out.print(CRLF);
+        out.print(body);
+        out.flush();
+    }
+}
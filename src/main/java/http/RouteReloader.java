@@ -0,0 +1,95 @@
+package main.java.http;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Watches the route property files and builds a fresh Router in the background whenever one changes.
+// The new table is handed to the consumer (a single volatile write in the server), requests in flight
+// keep using the Router they already read, so a reload never blocks or slows down request handling.
+public class RouteReloader implements Runnable {
+    private static final Set<String> ROUTE_FILES = Set.of("dynamicRoutes.properties", "staticRoutes.properties");
+
+    private final Path configDir;
+    private final Supplier<Router> factory;
+    private final Consumer<Router> publish;
+    private WatchService watchService;
+
+    public RouteReloader(Supplier<Router> factory, Consumer<Router> publish) {
+        // same lookup as the routers: src/main/resources, falling back to the working directory
+        Path resources = Paths.get("src/main/resources");
+        this.configDir = Files.isDirectory(resources) ? resources : Paths.get(".");
+        this.factory = factory;
+        this.publish = publish;
+    }
+
+    public void start() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        configDir.register(watchService, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+
+        Thread t = new Thread(this, "RouteReloader");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean routesChanged = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.context() instanceof Path changed && ROUTE_FILES.contains(changed.toString())) {
+                        routesChanged = true;
+                    }
+                }
+                key.reset();
+
+                if (routesChanged) {
+                    Thread.sleep(100);          // editors often write a file in several steps
+                    drainPendingEvents();
+                    reload();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    private void drainPendingEvents() {
+        WatchKey key;
+        while ((key = watchService.poll()) != null) {
+            key.pollEvents();
+            key.reset();
+        }
+    }
+
+    private void reload() {
+        try {
+            Router fresh = factory.get();
+            publish.accept(fresh);
+            System.out.println("Routes reloaded");
+        } catch (RuntimeException e) {
+            // a broken file must not take routing down, keep serving with the previous table
+            System.err.println("Route reload failed, keeping previous routes: " + e.getMessage());
+        }
+    }
+
+    public void stop() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+}
@@ -2,8 +2,11 @@ package main.java.http;
 
 import main.java.cache.BloomFilter;
 import main.java.cache.HybridCache;
+import main.java.config.ServerConfig;
+import main.java.handlers.AsyncHttpHandler;
 import main.java.handlers.HelloHandler;
-import main.java.handlers.RouteHandler;
+import main.java.handlers.HttpHandler;
+import main.java.handlers.SlowBackendHandler;
 import main.java.handlers.TimeHandler;
 import main.java.handlers.UserHandler;
 
@@ -15,17 +18,23 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 
+// Routing table built once from staticRoutes.properties + dynamicRoutes.properties and never modified afterwards,
+// so one instance is shared by all workers. Route changes build a new Router (see RouteReloader).
 public class Router {
+    private static final String UNMATCHED_KEY = "<unmatched>";
 
-    private StaticRouter staticRoutes;
-    private TrieRouter dynamicRoutes;
+    private final StaticRouter staticRoutes;
+    private final TrieRouter dynamicRoutes;
+    private final CompiledRouter compiledRoutes;    // what requests are matched against
 
-    public Router() {
-        this.staticRoutes = new StaticRouter();
+    public Router(ServerConfig config) {
+        this.staticRoutes = new StaticRouter(config);
         this.dynamicRoutes = new TrieRouter();
         addDynamicRoutes();
+        this.compiledRoutes = dynamicRoutes.compile();
     }
 
     private void addDynamicRoutes(){
@@ -41,12 +50,19 @@ public class Router {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        System.out.println("hi");
         for (String key : props.stringPropertyNames()) {
             String path = props.getProperty(key);
-            RouteHandler handler = switch (key) {
+            AsyncHttpHandler asyncHandler = switch (key) {
+                case "slow" -> new SlowBackendHandler();
+                default -> null;
+            };
+            if (asyncHandler != null) {
+                dynamicRoutes.setAsyncPath(path, asyncHandler);
+                continue;
+            }
+            HttpHandler handler = switch (key) {
                 case "users" -> new UserHandler();      // dynamic route handler
-                //case "comments" -> new CommentsHandler();
+                //case "comments" -> HttpHandler.of(new CommentsHandler());   // a RouteHandler that prints its response
                 case "time" -> new TimeHandler();
                 default -> throw new RuntimeException("Unknown handler key: " + key);
             };
@@ -70,32 +86,61 @@ public class Router {
 //
 //    }
 
-    public void route(HTTPRequest request, PrintWriter out, OutputStream rawOut, HybridCache cache) {
+    // What per-path rate limits count against: the route template for dynamic routes (/api/users/:userId,
+    // not every /api/users/N), the path for static routes, and one shared key for everything that matches
+    // nothing (404 probes). The match is kept on the request so route() doesn't look it up again.
+    public String rateLimitKey(HTTPRequest request) {
+        String path = request.getPath();
+        CompiledRouter.Route match = compiledRoutes.find(path);
+        if (match != null) {
+            request.setRoute(match);
+            return match.template();
+        }
+        return staticRoutes.getPath(path) != null ? path : UNMATCHED_KEY;
+    }
+
+    // scheduling class, from the path only so it can be decided before the request is queued for a worker.
+    // Like rateLimitKey it keeps the match on the request
+    public RequestClass classify(HTTPRequest request) {
+        String path = request.getPath();
+        CompiledRouter.Route match = request.getRoute() != null ? request.getRoute() : compiledRoutes.find(path);
+        if (match != null) {
+            request.setRoute(match);
+            return RequestClass.API;
+        }
+        return staticRoutes.getPath(path) != null ? RequestClass.STATIC : RequestClass.OTHER;
+    }
+
+    // answers the request, or - for an AsyncHttpHandler route - returns the pending response without writing
+    // anything; the caller sends it once the stage completes. null = the response has been written.
+    public CompletionStage<HttpResponse> route(HTTPRequest request, PrintWriter out, OutputStream rawOut, HybridCache cache) {
         String path = request.getPath();
 
         // 1️⃣ Check dynamic routes first
-        TrieRouter.RouteMatch match = dynamicRoutes.findPath(path);
+        CompiledRouter.Route match = request.getRoute() != null ? request.getRoute() : compiledRoutes.find(path);
         if (match != null) {
-            // inject params into request (optional if your request supports it)
-            request.setParams(match.params());
+            // params are cut out of the path only if the handler calls request.getParams()
+            request.setRoute(match);
+
+            if (match.asyncHandler() != null) {
+                return match.asyncHandler().handle(request);
+            }
 
-            // call handler
-            match.handler().handle(request, out);
-            return;
+            // call handler, its response goes out in one write
+            match.handler().handle(request).send(request, out, rawOut);
+            return null;
         }
 
         // 2️⃣ Otherwise check static routes
         String filePath = staticRoutes.getPath(path);
         if (filePath != null) {
-            staticRoutes.serveStaticFile(filePath, out, rawOut,cache);
-            return;
+            staticRoutes.serveStaticFile(request, filePath, out, rawOut, cache);
+            return null;
         }
 
         // 3️⃣ Nothing matched → 404
-        out.println("HTTP/1.1 404 Not Found");
-        out.println("Content-Type: text/plain");
-        out.println();
-        out.println("404 Not Found: " + path);
+        HttpResponse.text(404, "text/plain", "404 Not Found: " + path + "\n").send(request, out, rawOut);
+        return null;
     }
 
 
@@ -1,21 +1,44 @@
 package main.java.http;
 
+import main.java.cache.CacheEntry;
 import main.java.cache.HybridCache;
+import main.java.config.ServerConfig;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class StaticRouter {
     private final Map<String, String> staticRoutes;
     private final String PUBLIC_DIR = "src/main/resources/staticFiles";
+    private final long zeroCopyThreshold;
+    private final boolean compression;
+    private final int compressionMinSize;
 
-    public StaticRouter(){
+    public StaticRouter(ServerConfig config){
         this.staticRoutes = new ConcurrentHashMap<>();
+        this.zeroCopyThreshold = config.getZeroCopyThreshold();
+        this.compression = config.isCompression();
+        this.compressionMinSize = config.getCompressionMinSize();
         addStaticRoutes();
     }
 
@@ -56,53 +79,241 @@ public class StaticRouter {
 //        sendFileResponse(file, out,rawOut);
 //    }
 
-    public void serveStaticFile(String path, PrintWriter out, OutputStream rawOut, HybridCache cache) {
+    public void serveStaticFile(HTTPRequest request, String path, PrintWriter out, OutputStream rawOut, HybridCache cache) {
         //  Read from disk
         File file = new File(PUBLIC_DIR + path);
 
         // Check Bloom filter first
         if (!cache.getFilter().mightContain(path)) {
-            send404(out); // definitely not present
+            send404(out, request); // definitely not present
             return;
         }
 
+        // Range requests are answered from the file itself, only the requested bytes are sent
+        if (request.getHeader("Range") != null && serveRanges(request, path, file, out, rawOut, cache)) {
+            return;
+        }
+
+        // each encoding a client asked for is cached under its own key: path, path#gzip, path#deflate
+        ContentEncoding encoding = compression ? ContentEncoding.negotiate(request.getHeader("Accept-Encoding")) : null;
+        String key = encoding == null ? path : variantKey(path, encoding);
+
         // Check HybridCache
-        byte[] data = cache.getFile(path);
-        if (data != null) {
-            sendFileResponse(file, out, rawOut, data); // cache hit
+        CacheEntry cached = cache.acquire(key);
+        if (cached != null) {
+            if (isNotModified(request, cached.validators())) {
+                cached.release();
+                sendNotModified(request, file, rawOut, cached.validators()); // client copy is still good
+            } else {
+                sendCachedResponse(request, file, rawOut, cached); // cache hit
+            }
             return;
         }
 
         if (!file.exists() || file.isDirectory()) {
-            send404(out);
+            cache.getFilter().recordFalsePositive(); // the filter said maybe, the disk says no
+            send404(out, request);
+            return;
+        }
+
+        // large files: straight from the page cache to the socket, never on the heap and never in the cache
+        long length = file.length();
+        if (length >= zeroCopyThreshold) {
+            sendFileZeroCopy(request, file, length, out, rawOut);
             return;
         }
 
         try {
-            data = Files.readAllBytes(file.toPath());
-            cache.putFile(path, data); // store in cache
-            sendFileResponse(file,out, rawOut, data); // send to client
+            // generation and stat before reading: if the file changes from here on, the watcher's invalidation
+            // makes the cache refuse what we read, so an old version can't be stored after the event
+            long generation = cache.generation(path);
+            long lastModified = lastModifiedOf(file);
+            byte[] data = Files.readAllBytes(file.toPath());
+
+            // render the whole response once (and compress once), every later hit just writes these bytes
+            String mimeType = mimeTypeOf(file);
+            String contentType = mimeType + "; charset=UTF-8";
+            boolean compressible = compression && data.length >= compressionMinSize
+                    && ContentEncoding.isCompressible(mimeType);
+            String etag = contentHash(data);
+
+            // only the representation this client asked for is rendered and cached, under its own key: one miss
+            // takes one cache slot, and other encodings are compressed when a client actually wants them
+            Rendered chosen = null;
+            if (compressible && encoding != null) {
+                byte[] compressed = encoding.compress(data);
+                if (compressed.length < data.length) {
+                    chosen = render(contentType, compressed, encoding, true, etag + "-" + encoding.token(), lastModified);
+                }
+            }
+            if (chosen == null) {
+                chosen = render(contentType, data, null, compressible, etag, lastModified);
+            }
+            store(cache, key, chosen, generation);
+
+            if (isNotModified(request, chosen.validators)) {
+                sendNotModified(request, file, rawOut, chosen.validators);
+            } else {
+                sendFileResponse(request, file, rawOut, chosen); // send to client
+            }
         } catch (IOException e) {
             e.printStackTrace();
-            send500(out,e.getMessage());
+            send500(out, request, e.getMessage());
         }
     }
 
 
 
-    private void sendFileResponse(File file, PrintWriter out,OutputStream rawOut,byte[] data) {
+    // cache hit: the pre-rendered response goes out as is - no probeContentType, no stat, no header formatting.
+    // The body is handed to the sink without copying and the entry is released once it's out
+    private void sendCachedResponse(HTTPRequest request, File file, OutputStream rawOut, CacheEntry entry) {
+        boolean handedOver = false;
+        try {
+            ByteBuffer response = entry.response();
+            ByteBuffer closeHead = null;
+            if (!request.isKeepAlive()) {
+                closeHead = ByteBuffer.wrap(entry.closeHead());
+                response = entry.body();
+            }
+
+            if (rawOut instanceof ChannelSink sink) {
+                handedOver = true;
+                if (closeHead != null) {
+                    // the other head in front of the cached body, still one write
+                    sink.writeBuffers(new ByteBuffer[]{closeHead, response}, entry::release);
+                } else {
+                    sink.writeBuffer(response, entry::release);
+                }
+            } else {
+                if (closeHead != null) {
+                    rawOut.write(entry.closeHead());
+                }
+                byte[] bytes = new byte[response.remaining()];
+                response.get(bytes);
+                rawOut.write(bytes);
+                rawOut.flush();
+            }
+        } catch (IOException e) {
+            request.setKeepAlive(false);
+            System.err.println("Error sending " + file + ": " + e.getMessage());
+        } finally {
+            if (!handedOver) {
+                entry.release();
+            }
+        }
+    }
+
+    private static String variantKey(String path, ContentEncoding encoding) {
+        return HybridCache.variantKey(path, encoding.token());
+    }
+
+    // a complete 200 response: keep-alive head + body in one array, plus the head for a closing connection
+    private record Rendered(byte[] response, int bodyOffset, byte[] closeHead, CacheEntry.Validators validators) {
+    }
+
+    private static void store(HybridCache cache, String key, Rendered rendered, long generation) {
+        cache.putResponse(key, rendered.response, rendered.bodyOffset, rendered.closeHead, rendered.validators,
+                generation);
+    }
+
+    private static Rendered render(String contentType, byte[] body, ContentEncoding encoding, boolean vary,
+                                   String etag, long lastModified) {
+        String quotedEtag = "\"" + etag + "\"";
+        String validatorHeaders = validatorHeaders(quotedEtag, lastModified)
+                + (vary ? "Vary: Accept-Encoding" + ResponseWriter.CRLF : "");
+        String extra = (encoding != null ? "Content-Encoding: " + encoding.token() + ResponseWriter.CRLF : "")
+                + validatorHeaders
+                + "Accept-Ranges: bytes" + ResponseWriter.CRLF
+                + ResponseWriter.CRLF;
+        byte[] head = (ResponseWriter.head("200 OK", contentType, body.length, true) + extra)
+                .getBytes(StandardCharsets.ISO_8859_1);
+        byte[] closeHead = (ResponseWriter.head("200 OK", contentType, body.length, false) + extra)
+                .getBytes(StandardCharsets.ISO_8859_1);
+        byte[] response = Arrays.copyOf(head, head.length + body.length);
+        System.arraycopy(body, 0, response, head.length, body.length);
+
+        CacheEntry.Validators validators = new CacheEntry.Validators(quotedEtag, lastModified,
+                notModifiedHead(validatorHeaders, true), notModifiedHead(validatorHeaders, false));
+        return new Rendered(response, head.length, closeHead, validators);
+    }
+
+    private static byte[] notModifiedHead(String validatorHeaders, boolean keepAlive) {
+        return ("HTTP/1.1 304 Not Modified" + ResponseWriter.CRLF
+                + validatorHeaders
+                + (keepAlive ? "" : "Connection: close" + ResponseWriter.CRLF)
+                + ResponseWriter.CRLF).getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    // strong validator: changes whenever the bytes change
+    private static String contentHash(byte[] data) {
         try {
-            String mimeType = Files.probeContentType(Paths.get(file.getAbsolutePath()));
-            if (mimeType == null) {
-                mimeType = "text/plain";
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            return HexFormat.of().formatHex(digest, 0, 12);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);  // every JDK ships SHA-256
+        }
+    }
+
+    // HTTP dates only have second precision, compare in whole seconds
+    private static long lastModifiedOf(File file) {
+        return file.lastModified() / 1000 * 1000;
+    }
+
+    private static String httpDate(long millis) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(millis).atOffset(ZoneOffset.UTC));
+    }
+
+    // If-None-Match wins over If-Modified-Since (RFC 9110 13.2.2)
+    private static boolean isNotModified(HTTPRequest request, CacheEntry.Validators validators) {
+        if (validators == null) {
+            return false;
+        }
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            String etag = weak(validators.etag());
+            for (String candidate : ifNoneMatch.split(",")) {
+                candidate = candidate.trim();
+                if (candidate.equals("*") || weak(candidate).equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        String ifModifiedSince = request.getHeader("If-Modified-Since");
+        if (ifModifiedSince != null) {
+            try {
+                long since = ZonedDateTime.parse(ifModifiedSince.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+                        .toInstant().toEpochMilli();
+                return validators.lastModified() <= since;
+            } catch (DateTimeParseException e) {
+                return false;   // invalid dates are ignored
             }
+        }
+        return false;
+    }
+
+    // If-None-Match uses the weak comparison: W/"x" matches "x"
+    private static String weak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private void sendNotModified(HTTPRequest request, File file, OutputStream rawOut, CacheEntry.Validators validators) {
+        try {
+            rawOut.write(request.isKeepAlive() ? validators.notModified() : validators.notModifiedClose());
+            rawOut.flush();
+        } catch (IOException e) {
+            request.setKeepAlive(false);
+            System.err.println("Error sending " + file + ": " + e.getMessage());
+        }
+    }
 
-            out.println("HTTP/1.1 200 OK");
-            out.println("Content-Type: " + mimeType + "; charset=UTF-8");
-            out.println("Content-Length: " + file.length());
-            out.println();
-            out.flush();
+    private String mimeTypeOf(File file) throws IOException {
+        String mimeType = Files.probeContentType(Paths.get(file.getAbsolutePath()));
+        return mimeType == null ? "text/plain" : mimeType;
+    }
 
+    private void sendFileResponse(HTTPRequest request, File file, OutputStream rawOut, Rendered rendered) {
+        try {
 //            BufferedReader reader = new BufferedReader(new FileReader(file));
 //            String line;
 //            while ((line = reader.readLine()) != null) {
@@ -119,26 +330,202 @@ public class StaticRouter {
 //            rawOut.flush();
 //            fis.close();
 
-            rawOut.write(data);
+            byte[] response = rendered.response;
+            if (request.isKeepAlive()) {
+                rawOut.write(response);
+            } else if (rawOut instanceof ChannelSink sink) {
+                // close head + the body part of the keep-alive response, one gathering write
+                ByteBuffer body = ByteBuffer.wrap(response, rendered.bodyOffset, response.length - rendered.bodyOffset);
+                sink.writeBuffers(new ByteBuffer[]{ByteBuffer.wrap(rendered.closeHead), body}, () -> {});
+            } else {
+                rawOut.write(rendered.closeHead);
+                rawOut.write(response, rendered.bodyOffset, response.length - rendered.bodyOffset);
+            }
+            rawOut.flush();
+
+        } catch (IOException e) {
+            // headers may already be out, the only safe thing left is to drop the connection
+            request.setKeepAlive(false);
+            System.err.println("Error sending " + file + ": " + e.getMessage());
+        }
+    }
+
+    // not hashed (that would mean reading the whole file), size + mtime make a weak validator
+    private static CacheEntry.Validators diskValidators(long length, long lastModified) {
+        String etag = "W/\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+        String validatorHeaders = validatorHeaders(etag, lastModified);
+        return new CacheEntry.Validators(etag, lastModified,
+                notModifiedHead(validatorHeaders, true), notModifiedHead(validatorHeaders, false));
+    }
+
+    private static String validatorHeaders(String etag, long lastModified) {
+        return "ETag: " + etag + ResponseWriter.CRLF
+                + "Last-Modified: " + httpDate(lastModified) + ResponseWriter.CRLF;
+    }
+
+    // Range / If-Range handling: 206 for one range, 206 multipart/byteranges for several, 416 if none fits.
+    // Returns false when the Range header has to be ignored, the caller then sends the full 200.
+    private boolean serveRanges(HTTPRequest request, String path, File file, PrintWriter out, OutputStream rawOut,
+                                HybridCache cache) {
+        if (!file.isFile()) {
+            return false;
+        }
+        long length = file.length();
+        long lastModified = lastModifiedOf(file);
+        List<ByteRanges.Range> ranges = ByteRanges.parse(request.getHeader("Range"), length);
+        if (ranges == null) {
+            return false;
+        }
+
+        // the strong ETag of the cached copy if it still matches the file, so If-Range works with what the 200 sent
+        CacheEntry.Validators validators = cache.peekValidators(path);
+        if (validators == null || validators.lastModified() != lastModified) {
+            validators = diskValidators(length, lastModified);
+        }
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange != null && !ifRangeMatches(ifRange.trim(), validators)) {
+            return false;   // the client's partial copy is outdated, it needs the whole thing
+        }
+        if (isNotModified(request, validators)) {
+            sendNotModified(request, file, rawOut, validators);
+            return true;
+        }
+
+        if (ranges.isEmpty()) {
+            ResponseWriter.writeHead(out, request, "416 Range Not Satisfiable", "text/plain", 0);
+            ResponseWriter.writeHeader(out, "Content-Range", "bytes */" + length);
+            ResponseWriter.endHeaders(out);
+            return true;
+        }
+
+        try {
+            String contentType = mimeTypeOf(file) + "; charset=UTF-8";
+            String validatorHeaders = validatorHeaders(validators.etag(), lastModified);
+            if (ranges.size() == 1) {
+                ByteRanges.Range range = ranges.get(0);
+                ResponseWriter.writeHead(out, request, "206 Partial Content", contentType, range.length());
+                ResponseWriter.writeHeader(out, "Content-Range", range.contentRange(length));
+                out.print(validatorHeaders);
+                ResponseWriter.endHeaders(out);
+                sendFileRegion(file, range.start(), range.length(), rawOut);
+                return true;
+            }
+
+            String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong());
+            byte[][] partHeads = new byte[ranges.size()][];
+            long contentLength = 0;
+            for (int i = 0; i < partHeads.length; i++) {
+                ByteRanges.Range range = ranges.get(i);
+                partHeads[i] = (ResponseWriter.CRLF + "--" + boundary + ResponseWriter.CRLF
+                        + "Content-Type: " + contentType + ResponseWriter.CRLF
+                        + "Content-Range: " + range.contentRange(length) + ResponseWriter.CRLF
+                        + ResponseWriter.CRLF).getBytes(StandardCharsets.ISO_8859_1);
+                contentLength += partHeads[i].length + range.length();
+            }
+            byte[] tail = (ResponseWriter.CRLF + "--" + boundary + "--" + ResponseWriter.CRLF)
+                    .getBytes(StandardCharsets.ISO_8859_1);
+            contentLength += tail.length;
+
+            ResponseWriter.writeHead(out, request, "206 Partial Content",
+                    "multipart/byteranges; boundary=" + boundary, contentLength);
+            out.print(validatorHeaders);
+            ResponseWriter.endHeaders(out);
+            for (int i = 0; i < partHeads.length; i++) {
+                rawOut.write(partHeads[i]);
+                sendFileRegion(file, ranges.get(i).start(), ranges.get(i).length(), rawOut);
+            }
+            rawOut.write(tail);
             rawOut.flush();
+        } catch (IOException e) {
+            request.setKeepAlive(false);
+            System.err.println("Error sending " + file + ": " + e.getMessage());
+        }
+        return true;
+    }
+
+    // If-Range needs a strong match: an exact strong ETag, or exactly the Last-Modified date
+    private static boolean ifRangeMatches(String ifRange, CacheEntry.Validators validators) {
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return !ifRange.startsWith("W/") && !validators.etag().startsWith("W/") && ifRange.equals(validators.etag());
+        }
+        try {
+            long date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return date == validators.lastModified();
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
 
+    // count bytes of file from position, with transferTo when the output is a ChannelSink
+    private void sendFileRegion(File file, long position, long count, OutputStream rawOut) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath());
+        if (rawOut instanceof ChannelSink sink) {
+            sink.transferFile(channel, position, count);    // sink closes the channel
+            return;
+        }
+        try (channel) {
+            ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(64 * 1024, Math.max(1, count)));
+            while (count > 0) {
+                chunk.clear().limit((int) Math.min(chunk.capacity(), count));
+                int n = channel.read(chunk, position);
+                if (n < 0) {
+                    throw new IOException("File shrank while sending");
+                }
+                rawOut.write(chunk.array(), 0, n);
+                position += n;
+                count -= n;
+            }
+        }
+        rawOut.flush();
+    }
+
+    private void sendFileZeroCopy(HTTPRequest request, File file, long length, PrintWriter out, OutputStream rawOut) {
+        long lastModified = lastModifiedOf(file);
+        CacheEntry.Validators validators = diskValidators(length, lastModified);
+        if (isNotModified(request, validators)) {
+            sendNotModified(request, file, rawOut, validators);
+            return;
+        }
+
+        FileChannel channel;
+        String mimeType;
+        try {
+            channel = FileChannel.open(file.toPath());
+            mimeType = Files.probeContentType(file.toPath());
+        } catch (IOException e) {
+            send500(out, request, e.getMessage());
+            return;
+        }
+        if (mimeType == null) {
+            mimeType = "text/plain";
+        }
+
+        try {
+            ResponseWriter.writeHead(out, request, "200 OK", mimeType + "; charset=UTF-8", length);
+            out.print(validatorHeaders(validators.etag(), lastModified));
+            ResponseWriter.writeHeader(out, "Accept-Ranges", "bytes");
+            ResponseWriter.endHeaders(out);
+
+            if (rawOut instanceof ChannelSink sink) {
+                sink.transferFile(channel, 0, length);  // sink closes the channel
+            } else {
+                try (channel; InputStream in = Channels.newInputStream(channel)) {
+                    in.transferTo(rawOut);
+                }
+                rawOut.flush();
+            }
         } catch (IOException e) {
-            send500(out, e.getMessage());
+            request.setKeepAlive(false);
+            System.err.println("Error sending " + file + ": " + e.getMessage());
         }
     }
 
-    private void send500(PrintWriter out, String message) {
-        out.println("HTTP/1.1 500 Internal Server Error");
-        out.println("Content-Type: text/html; charset=UTF-8");
-        out.println();
-        out.println("<h1>500 Internal Server Error</h1>");
-        out.println("<p>" + message + "</p>");
+    private void send500(PrintWriter out, HTTPRequest request, String message) {
+        ResponseWriter.send(out, request, "500 Internal Server Error", "text/html; charset=UTF-8",
+                "<h1>500 Internal Server Error</h1>\n<p>" + message + "</p>\n");
     }
 
-    private void send404(PrintWriter out) {
-        out.println("HTTP/1.1 404 Not Found");
-        out.println("Content-Type: text/html; charset=UTF-8");
-        out.println();
-        out.println("<h1>404 Not Found</h1>");
+    private void send404(PrintWriter out, HTTPRequest request) {
+        ResponseWriter.send(out, request, "404 Not Found", "text/html; charset=UTF-8", "<h1>404 Not Found</h1>\n");
     }
 }
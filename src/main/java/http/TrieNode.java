@@ -0,0 +1,90 @@
+package main.java.http;
+
+import main.java.handlers.AsyncHttpHandler;
+import main.java.handlers.HttpHandler;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+class TrieNode{
+    private Map<String, TrieNode> children;
+    private TrieNode paramChild;
+    private TrieNode wildcardChild;
+    private String paramName;
+    private boolean isEndOfRoute;
+    private HttpHandler handler;
+    private AsyncHttpHandler asyncHandler;
+
+    public TrieNode() {
+        this.children = new ConcurrentHashMap<>();
+        this.paramChild = null;
+        this.paramName = null;
+        this.isEndOfRoute = false;
+        this.handler = null;
+    }
+
+//    public void addChildren(String name){
+//        this.children.put(name,new TrieNode());
+//    }
+
+    public void addChild(String name) {
+        this.children.computeIfAbsent(name, k -> new TrieNode());
+    }
+
+
+    public void setParamChild(TrieNode paramChild) {
+        this.paramChild = paramChild;
+    }
+
+    public void setWildcardChild(TrieNode wildcardChild) {
+        this.wildcardChild = wildcardChild;
+    }
+
+    public void setChildren(Map<String, TrieNode> children) {
+        this.children = children;
+    }
+
+    public void setParamName(String paramName) {
+        this.paramName = paramName;
+    }
+
+    public void setEndOfRoute(boolean endOfRoute) {
+        isEndOfRoute = endOfRoute;
+    }
+
+    public void setHandler(HttpHandler handler) {
+        this.handler = handler;
+    }
+
+    public void setAsyncHandler(AsyncHttpHandler asyncHandler) {
+        this.asyncHandler = asyncHandler;
+    }
+
+    public Map<String, TrieNode> getChildren() {
+        return children;
+    }
+
+    public TrieNode getParamChild() {
+        return paramChild;
+    }
+
+    public TrieNode getWildcardChild() {
+        return wildcardChild;
+    }
+
+    public String getParamName() {
+        return paramName;
+    }
+
+    public boolean isEndOfRoute() {
+        return isEndOfRoute;
+    }
+
+    public HttpHandler getHandler() {
+        return handler;
+    }
+
+    public AsyncHttpHandler getAsyncHandler() {
+        return asyncHandler;
+    }
+}
@@ -1,16 +1,17 @@
 package main.java.http;
 
-import main.java.handlers.RouteHandler;
+import main.java.handlers.AsyncHttpHandler;
+import main.java.handlers.HttpHandler;
 
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class TrieRouter {
     private final TrieNode node;
@@ -20,8 +21,20 @@ public class TrieRouter {
 
 
 
-    public void setPath(String path,RouteHandler handler ){
+    public void setPath(String path,HttpHandler handler ){
+        TrieNode current = insert(path);
+        current.setHandler(handler);
+        current.setAsyncHandler(null);
+    }
+
+    // a route answered asynchronously, see AsyncHttpHandler
+    public void setAsyncPath(String path, AsyncHttpHandler handler) {
+        TrieNode current = insert(path);
+        current.setHandler(null);
+        current.setAsyncHandler(handler);
+    }
 
+    private TrieNode insert(String path) {
         String[] segments = path.substring(1).split("/");
         TrieNode current = node;
 
@@ -30,6 +43,17 @@ public class TrieRouter {
                continue;
            }
 
+           if(segment.startsWith("*")){
+               // catch-all: matches the rest of the path, so it has to be the last segment
+               if (current.getWildcardChild() == null) {
+                   TrieNode wildcardNode = new TrieNode();
+                   current.setWildcardChild(wildcardNode);
+                   wildcardNode.setParamName(segment.substring(1));
+               }
+               current = current.getWildcardChild();
+               break;
+           }
+
            if(segment.startsWith(":")){
                if (current.getParamChild() == null) {
                    TrieNode paramNode = new TrieNode();
@@ -48,105 +72,62 @@ public class TrieRouter {
 
        }
         current.setEndOfRoute(true);
-        current.setHandler(handler);
+        return current;
     }
 
+    // same matching as CompiledRouter.find: static child > :param child > *wildcard (rest of the path),
+    // falling back to the next option when a branch dead-ends deeper down
     public RouteMatch findPath(String path){
         Map<String,String> params = new HashMap<>();
-        String[] segments = path.substring(1).split("/");
-        TrieNode current = node;
-
-        for(String segment : segments) {
-            if (segment.isEmpty()) {
-                continue;
-            }
-            if(current.getChildren().containsKey(segment)){
-                current = current.getChildren().get(segment);
-            }else if (current.getParamChild() != null){
-                params.put(current.getParamChild().getParamName(),segment);
-                current = current.getParamChild();
-            }else {
-                return null;
-            }
+        String[] segments = path.substring(1).split("/", -1);
+        TrieNode current = match(node, segments, 0, params);
 
-        }
-
-        if (current.isEndOfRoute()){
-            return new RouteMatch(current.getHandler(), params);
+        if (current != null){
+            return new RouteMatch(current.getHandler(), current.getAsyncHandler(), params);
         }
 
         return null;
     }
 
+    private static TrieNode match(TrieNode current, String[] segments, int index, Map<String,String> params) {
+        while (index < segments.length && segments[index].isEmpty()) {
+            index++;
+        }
+        if (index == segments.length) {
+            return current.isEndOfRoute() ? current : null;
+        }
+        String segment = segments[index];
 
-    // record class used
-    public record RouteMatch(RouteHandler handler, Map<String, String> params) {
-    }
-}
-
-
-
-class TrieNode{
-    private Map<String, TrieNode> children;
-    private TrieNode paramChild;
-    private String paramName;
-    private boolean isEndOfRoute;
-    private RouteHandler handler;
-
-    public TrieNode() {
-        this.children = new ConcurrentHashMap<>();
-        this.paramChild = null;
-        this.paramName = null;
-        this.isEndOfRoute = false;
-        this.handler = null;
-    }
-
-//    public void addChildren(String name){
-//        this.children.put(name,new TrieNode());
-//    }
-
-    public void addChild(String name) {
-        this.children.computeIfAbsent(name, k -> new TrieNode());
-    }
-
-
-    public void setParamChild(TrieNode paramChild) {
-        this.paramChild = paramChild;
-    }
-
-    public void setChildren(Map<String, TrieNode> children) {
-        this.children = children;
-    }
-
-    public void setParamName(String paramName) {
-        this.paramName = paramName;
-    }
-
-    public void setEndOfRoute(boolean endOfRoute) {
-        isEndOfRoute = endOfRoute;
-    }
-
-    public void setHandler(RouteHandler handler) {
-        this.handler = handler;
-    }
-
-    public Map<String, TrieNode> getChildren() {
-        return children;
-    }
-
-    public TrieNode getParamChild() {
-        return paramChild;
-    }
-
-    public String getParamName() {
-        return paramName;
+        TrieNode child = current.getChildren().get(segment);
+        if (child != null) {
+            TrieNode found = match(child, segments, index + 1, params);
+            if (found != null) {
+                return found;
+            }
+        }
+        TrieNode paramChild = current.getParamChild();
+        if (paramChild != null) {
+            TrieNode found = match(paramChild, segments, index + 1, params);
+            if (found != null) {
+                params.put(paramChild.getParamName(), segment);
+                return found;
+            }
+        }
+        TrieNode wildcardChild = current.getWildcardChild();
+        if (wildcardChild != null && wildcardChild.isEndOfRoute()) {
+            String rest = String.join("/", Arrays.copyOfRange(segments, index, segments.length));
+            params.put(wildcardChild.getParamName(), rest);
+            return wildcardChild;
+        }
+        return null;
     }
 
-    public boolean isEndOfRoute() {
-        return isEndOfRoute;
+    // read-only lookup structure used on the request path, build it once all routes are set
+    public CompiledRouter compile() {
+        return new CompiledRouter(node);
     }
 
-    public RouteHandler getHandler() {
-        return handler;
+    // record class used, exactly one of handler and asyncHandler is set
+    public record RouteMatch(HttpHandler handler, AsyncHttpHandler asyncHandler, Map<String, String> params) {
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,105 @@
+package main.java.rateLimiting;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Approximate per-key request counts over a sliding time window, in fixed memory.
+// depth rows of width counters; a key maps to one counter per row and its count is the minimum over its
+// rows, so it can only be overestimated (by collisions), never under. Conservative update: only the
+// counters at that minimum are bumped, which keeps the overestimate much lower when the sketch is busy. Two generations give the sliding
+// window: count = current + previous * (share of the previous window still inside the sliding window).
+// Memory is 2 * depth * width ints no matter how many distinct keys show up.
+final class CountMinSketch {
+    private final int depth;
+    private final int mask;
+    private final long windowNanos;
+    private final ReentrantLock rotateLock = new ReentrantLock();
+
+    private volatile AtomicIntegerArray current;
+    private volatile AtomicIntegerArray previous;
+    private volatile long windowStart;
+
+    CountMinSketch(int depth, int width, long windowNanos) {
+        this.depth = depth;
+        int w = Integer.highestOneBit(Math.max(16, width - 1)) << 1;
+        this.mask = w - 1;
+        this.windowNanos = windowNanos;
+        this.current = new AtomicIntegerArray(depth * w);
+        this.previous = new AtomicIntegerArray(depth * w);
+        this.windowStart = System.nanoTime();
+    }
+
+    // counts one event for key and returns the key's estimated count in the sliding window (including this one)
+    int increment(String key) {
+        long now = System.nanoTime();
+        rotateIfNeeded(now);
+
+        AtomicIntegerArray cur = current;
+        AtomicIntegerArray prev = previous;
+        long h1 = hash(key);
+        long h2 = (h1 >>> 32) | 1;
+        int width = mask + 1;
+        int minCurrent = Integer.MAX_VALUE;
+        int minPrevious = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int index = row * width + (int) ((h1 + row * h2) & mask);
+            minCurrent = Math.min(minCurrent, cur.get(index));
+            minPrevious = Math.min(minPrevious, prev.get(index));
+        }
+        for (int row = 0; row < depth; row++) {
+            int index = row * width + (int) ((h1 + row * h2) & mask);
+            // raise every counter to at least min + 1, counters already above it belong to other keys too
+            int value;
+            while ((value = cur.get(index)) <= minCurrent && !cur.compareAndSet(index, value, minCurrent + 1)) {
+                // raced with another key on this counter, look again
+            }
+        }
+        minCurrent++;
+
+        double elapsed = Math.min(1.0, (double) (now - windowStart) / windowNanos);
+        return minCurrent + (int) (minPrevious * (1.0 - elapsed));
+    }
+
+    private void rotateIfNeeded(long now) {
+        if (now - windowStart < windowNanos || !rotateLock.tryLock()) {
+            return;
+        }
+        try {
+            long start = windowStart;
+            if (now - start < windowNanos) {
+                return;
+            }
+            // more than two windows idle: nothing of the old counts is inside the sliding window any more
+            AtomicIntegerArray recycled = previous;
+            for (int i = 0; i < recycled.length(); i++) {
+                recycled.set(i, 0);
+            }
+            if (now - start >= 2 * windowNanos) {
+                AtomicIntegerArray cur = current;
+                for (int i = 0; i < cur.length(); i++) {
+                    cur.set(i, 0);
+                }
+            }
+            previous = current;
+            current = recycled;
+            windowStart = now - (now - start) % windowNanos;
+        } finally {
+            rotateLock.unlock();
+        }
+    }
+
+    // FNV-1a over the chars, finished with a murmur3 mix so every bit of the key reaches both halves
+    // (MappedLimiterTable uses it for its slot keys too)
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+}
@@ -0,0 +1,61 @@
+package main.java.rateLimiting;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Generic Cell Rate Algorithm: the same limit as a token bucket (capacity burst, refillRate per second),
+// but the whole state is one long - the theoretical arrival time (TAT) of the next request, in nanos.
+// Every request pushes the TAT one emission interval (1s / refillRate) further; a request is allowed as
+// long as the TAT stays within capacity intervals of now. The update is a single CAS, so threads never
+// block each other and there is no lock for the hot global limiter to serialize on.
+public class GcraLimiter implements Limiter {
+    private final int capacity;
+    private final double refillRate;
+    private final long interval;        // nanos per token
+    private final long burst;           // capacity * interval
+    private final AtomicLong tat;
+
+    public GcraLimiter(int capacity, double refillRate) {
+        this.capacity = capacity;
+        this.refillRate = refillRate;
+        this.interval = Math.max(1, (long) (1_000_000_000L / refillRate));
+        this.burst = capacity * interval;
+        this.tat = new AtomicLong(System.nanoTime());   // start full
+    }
+
+    @Override
+    public boolean allowRequest() {
+        long now = System.nanoTime();
+        while (true) {
+            long current = tat.get();
+            long next = Math.max(current, now) + interval;
+            if (next - now > burst) {
+                return false;   // would go over the burst, nothing to write
+            }
+            if (tat.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public double getTokens() {
+        long now = System.nanoTime();
+        long used = Math.max(0, tat.get() - now);
+        return Math.max(0, (double) (burst - used) / interval);
+    }
+
+    // nanoTime at which the budget is full again, lets callers drop idle limiters
+    public long getFullAt() {
+        return tat.get();
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public double getRefillRate() {
+        return refillRate;
+    }
+}
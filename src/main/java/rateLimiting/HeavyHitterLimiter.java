@@ -0,0 +1,55 @@
+package main.java.rateLimiting;
+
+// Per-IP limiting in constant memory.
+// Every client is only counted in a CountMinSketch over a window of capacity/refillRate seconds (the time a
+// bucket needs to refill). Using less than half a bucket in that window means the client is well under its
+// limit, so it needs no state of its own. A client that goes over that is a heavy hitter: it gets promoted
+// into an exact limiter (charged for what it already used) and is limited exactly from then on, until it has
+// been quiet long enough for that limiter to refill and be swept out again.
+final class HeavyHitterLimiter {
+    private final CountMinSketch sketch;
+    private final LimiterStore promoted;
+    private final int threshold;
+
+    HeavyHitterLimiter(LimiterStore promoted, int capacity, double refillRate, int sketchWidth) {
+        this.promoted = promoted;
+        this.threshold = Math.max(1, capacity / 2);
+        long windowNanos = (long) Math.max(1_000_000_000L, capacity / refillRate * 1_000_000_000L);
+        this.sketch = new CountMinSketch(4, sketchWidth, windowNanos);
+    }
+
+    boolean allowRequest(String ip) {
+        Limiter exact = promoted.peek(ip);
+        if (exact != null) {
+            return exact.allowRequest();
+        }
+        int estimate = sketch.increment(ip);
+        if (estimate < threshold) {
+            return true;
+        }
+
+        // charge the earlier requests of the window, which were let through already, exactly once: only the
+        // call that creates the limiter does it, concurrent requests of the same client find it charged.
+        // And only when this request is the one that crossed the threshold - an estimate above it means the
+        // client was promoted before in this window and its limiter, having paid for those requests and
+        // refilled, was swept out; counting them again would charge the client twice. (Should a concurrent
+        // request above the threshold create the limiter first, they go uncharged: in the client's favour.)
+        boolean crossing = estimate == threshold;
+        exact = promoted.get(ip, crossing ? this::chargeEarlierRequests : null);
+        return exact.allowRequest();
+    }
+
+    private void chargeEarlierRequests(Limiter limiter) {
+        for (int i = 1; i < threshold; i++) {
+            limiter.allowRequest();
+        }
+    }
+
+    Limiter peek(String ip) {
+        return promoted.peek(ip);
+    }
+
+    int promotedCount() {
+        return promoted.size();
+    }
+}
@@ -0,0 +1,21 @@
+package main.java.rateLimiting;
+
+// One rate limit: "capacity requests at once, refilled at refillRate per second".
+// TokenBucket is the original lock based version, GcraLimiter the lock-free one.
+public interface Limiter {
+
+    // takes one request's worth of budget, false = over the limit
+    boolean allowRequest();
+
+    // budget left right now (for the X-RateLimit headers)
+    double getTokens();
+
+    int getCapacity();
+
+    // back at full capacity, i.e. idle long enough to be thrown away and recreated without anyone noticing
+    default boolean isFull() {
+        return getTokens() >= getCapacity();
+    }
+
+    double getRefillRate();
+}
@@ -0,0 +1,20 @@
+package main.java.rateLimiting;
+
+import java.util.function.Consumer;
+
+// Limiters looked up by key (client IP, route). LimiterTable keeps them on this process's heap,
+// MappedLimiterTable in a file shared by all server processes on the host.
+interface LimiterStore {
+
+    // the key's limiter, created if it has none yet
+    Limiter get(String key);
+
+    // same, and initialize runs on the new limiter only if this call is the one that created it - never twice
+    // for one limiter, however many threads (or processes) race to create it
+    Limiter get(String key, Consumer<Limiter> initialize);
+
+    // without creating one, null if the key has no limiter
+    Limiter peek(String key);
+
+    int size();
+}
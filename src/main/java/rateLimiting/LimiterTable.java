@@ -0,0 +1,89 @@
+package main.java.rateLimiting;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Per-key limiters (one per client IP, one per route) with bounded memory.
+// A limiter that is full again is indistinguishable from a new one, so it can be dropped: every
+// sweepInterval a request thread sweeps those out. If the table still hits maxEntries (e.g. a scan from
+// many addresses) it evicts in map order until it's back to 90%. An evicted client that comes back just
+// starts with a full budget again - the alternative is running out of heap.
+final class LimiterTable implements LimiterStore {
+    private final Map<String, Limiter> limiters = new ConcurrentHashMap<>();
+    private final Supplier<Limiter> factory;
+    private final int maxEntries;
+    private final long sweepIntervalNanos;
+    private final AtomicLong nextSweep;
+    private final ReentrantLock sweepLock = new ReentrantLock();
+
+    LimiterTable(Supplier<Limiter> factory, int maxEntries, long sweepIntervalNanos) {
+        this.factory = factory;
+        this.maxEntries = maxEntries;
+        this.sweepIntervalNanos = sweepIntervalNanos;
+        this.nextSweep = new AtomicLong(System.nanoTime() + sweepIntervalNanos);
+    }
+
+    @Override
+    public Limiter get(String key) {
+        return get(key, null);
+    }
+
+    @Override
+    public Limiter get(String key, Consumer<Limiter> initialize) {
+        Limiter limiter = limiters.get(key);
+        if (limiter == null) {
+            if (limiters.size() >= maxEntries) {
+                sweep(true);
+            }
+            limiter = limiters.computeIfAbsent(key, k -> {
+                Limiter created = factory.get();
+                if (initialize != null) {
+                    initialize.accept(created);     // nobody else can see it yet
+                }
+                return created;
+            });
+        }
+
+        long now = System.nanoTime();
+        long next = nextSweep.get();
+        if (now - next >= 0 && nextSweep.compareAndSet(next, now + sweepIntervalNanos)) {
+            sweep(false);
+        }
+        return limiter;
+    }
+
+    // without creating one, null if the key has no limiter (never seen or expired)
+    @Override
+    public Limiter peek(String key) {
+        return limiters.get(key);
+    }
+
+    @Override
+    public int size() {
+        return limiters.size();
+    }
+
+    private void sweep(boolean full) {
+        if (!sweepLock.tryLock()) {
+            return;     // somebody else is already at it
+        }
+        try {
+            limiters.values().removeIf(Limiter::isFull);
+            if (full && limiters.size() >= maxEntries) {
+                int target = maxEntries - maxEntries / 10;
+                Iterator<Limiter> it = limiters.values().iterator();
+                while (limiters.size() > target && it.hasNext()) {
+                    it.next();
+                    it.remove();
+                }
+            }
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+}
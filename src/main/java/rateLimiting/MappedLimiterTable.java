@@ -0,0 +1,214 @@
+package main.java.rateLimiting;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.function.Consumer;
+
+// Limiters kept in a memory-mapped file instead of on the heap, so all server processes on the host that map
+// the same file enforce one budget (several processes behind one port would otherwise give a client N times
+// its limit). No locks and no network round trip: the mapping is the same physical memory in every process
+// and each update is one CAS through a VarHandle on the mapped buffer.
+//
+// The file is a small header and a power-of-two number of 16 byte slots: [key hash][TAT]. The limit is GCRA
+// (see GcraLimiter), so a limiter's whole state is the one TAT long. Slots are found by linear probing from
+// the key hash and claimed by CAS'ing the key in over 0; keys never go back to 0, so a lookup can stop at the
+// first empty slot. With all probes taken, a slot whose budget is full again is taken over (a full limiter is
+// the same as a new one); if there is none the key shares its home slot, which only makes limits stricter.
+//
+// All processes must use the same capacity and refill rate for a file. Times are nanos since the epoch so
+// they mean the same thing in every process.
+final class MappedLimiterTable implements LimiterStore {
+    private static final long MAGIC = 0x524c494d54424c31L;     // "RLIMTBL1"
+    private static final int HEADER = 64;       // magic + slot count, padded to a cache line
+    private static final int SLOT = 16;
+    private static final int MAX_PROBES = 16;
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    // nanoTime is only comparable within one process, this turns it into epoch nanos
+    private static final long EPOCH_OFFSET;
+    static {
+        Instant wall = Instant.now();
+        EPOCH_OFFSET = wall.getEpochSecond() * 1_000_000_000L + wall.getNano() - System.nanoTime();
+    }
+
+    private final MappedByteBuffer buffer;
+    private final int mask;         // slots - 1
+    private final int capacity;
+    private final double refillRate;
+    private final long interval;    // nanos per token
+    private final long burst;       // capacity * interval
+
+    MappedLimiterTable(Path file, int expectedKeys, int capacity, double refillRate) {
+        int wanted = Math.max(16, (int) Math.min(1 << 30, expectedKeys * 4L / 3));   // keep probes short
+        int slots = Integer.highestOneBit(wanted - 1) << 1;
+        this.mask = slots - 1;
+        this.capacity = capacity;
+        this.refillRate = refillRate;
+        this.interval = Math.max(1, (long) (1_000_000_000L / refillRate));
+        this.burst = capacity * interval;
+
+        long size = HEADER + (long) slots * SLOT;
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw");
+             FileChannel channel = raf.getChannel()) {
+            // whoever gets here first lays the file out, the others find it ready
+            FileLock lock = channel.lock();
+            try {
+                if (raf.length() == 0) {
+                    raf.setLength(size);    // new file, every slot empty
+                    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                    buffer.putLong(8, slots);
+                    buffer.putLong(0, MAGIC);
+                } else if (raf.length() == size) {
+                    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                    if (buffer.getLong(0) != MAGIC || buffer.getLong(8) != slots) {
+                        throw new IOException("not a rate limit table of " + slots + " slots");
+                    }
+                } else {
+                    // resizing it would crash the processes that have it mapped (SIGBUS past the end)
+                    throw new IOException("size " + raf.length() + " != " + size + ", delete it when no server uses it");
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot map rate limit table " + file, e);
+        }
+    }
+
+    @Override
+    public Limiter get(String key) {
+        return get(key, null);
+    }
+
+    // the process whose CAS claims the slot is the one that created the limiter
+    @Override
+    public Limiter get(String key, Consumer<Limiter> initialize) {
+        long hash = keyHash(key);
+        int home = (int) hash & mask;
+        for (int i = 0; i < MAX_PROBES; i++) {
+            int at = offset(home + i);
+            long current = (long) LONGS.getVolatile(buffer, at);
+            if (current == hash) {
+                return new Slot(at + 8);
+            }
+            if (current == 0) {
+                if (LONGS.compareAndSet(buffer, at, 0L, hash)) {
+                    return created(new Slot(at + 8), initialize);   // a claimed slot's TAT is 0 or in the past, i.e. full
+                }
+                if ((long) LONGS.getVolatile(buffer, at) == hash) {
+                    return new Slot(at + 8);    // somebody else claimed it for the same key just now
+                }
+            }
+        }
+
+        // every probe taken by other keys: take over one that is idle
+        long now = now();
+        for (int i = 0; i < MAX_PROBES; i++) {
+            int at = offset(home + i);
+            long current = (long) LONGS.getVolatile(buffer, at);
+            if ((long) LONGS.getVolatile(buffer, at + 8) - now <= 0 && LONGS.compareAndSet(buffer, at, current, hash)) {
+                return created(new Slot(at + 8), initialize);
+            }
+        }
+        return new Slot(offset(home) + 8);
+    }
+
+    private static Limiter created(Limiter limiter, Consumer<Limiter> initialize) {
+        if (initialize != null) {
+            initialize.accept(limiter);
+        }
+        return limiter;
+    }
+
+    @Override
+    public Limiter peek(String key) {
+        long hash = keyHash(key);
+        int home = (int) hash & mask;
+        for (int i = 0; i < MAX_PROBES; i++) {
+            int at = offset(home + i);
+            long current = (long) LONGS.getVolatile(buffer, at);
+            if (current == hash) {
+                return new Slot(at + 8);
+            }
+            if (current == 0) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    // keys with budget in use right now, across all processes. Walks the whole file, for stats only
+    @Override
+    public int size() {
+        long now = now();
+        int used = 0;
+        for (int slot = 0; slot <= mask; slot++) {
+            int at = offset(slot);
+            if ((long) LONGS.getVolatile(buffer, at) != 0 && (long) LONGS.getVolatile(buffer, at + 8) - now > 0) {
+                used++;
+            }
+        }
+        return used;
+    }
+
+    private int offset(int slot) {
+        return HEADER + (slot & mask) * SLOT;
+    }
+
+    private static long keyHash(String key) {
+        long hash = CountMinSketch.hash(key);
+        return hash == 0 ? 1 : hash;    // 0 marks an empty slot
+    }
+
+    private static long now() {
+        return System.nanoTime() + EPOCH_OFFSET;
+    }
+
+    // view of one slot's TAT, same arithmetic as GcraLimiter
+    private final class Slot implements Limiter {
+        private final int tatOffset;
+
+        Slot(int tatOffset) {
+            this.tatOffset = tatOffset;
+        }
+
+        @Override
+        public boolean allowRequest() {
+            long now = now();
+            while (true) {
+                long current = (long) LONGS.getVolatile(buffer, tatOffset);
+                long next = Math.max(current, now) + interval;
+                if (next - now > burst) {
+                    return false;
+                }
+                if (LONGS.compareAndSet(buffer, tatOffset, current, next)) {
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public double getTokens() {
+            long used = Math.max(0, (long) LONGS.getVolatile(buffer, tatOffset) - now());
+            return Math.max(0, (double) (burst - used) / interval);
+        }
+
+        @Override
+        public int getCapacity() {
+            return capacity;
+        }
+
+        @Override
+        public double getRefillRate() {
+            return refillRate;
+        }
+    }
+}
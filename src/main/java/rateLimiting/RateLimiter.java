@@ -1,63 +1,155 @@
 package main.java.rateLimiting;
 
-import java.io.PrintWriter;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import main.java.http.ResponseWriter;
 
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Global, per-IP and per-route limits. Per-route means per route template (/api/users/:userId), not per raw
+// path, and both per-key tables are bounded (see LimiterTable), so neither many clients nor many distinct
+// URLs can grow this without limit. In SKETCH mode per-IP state is constant: only heavy hitters found by a
+// count-min sketch get a limiter of their own (see HeavyHitterLimiter).
+// With a shared directory all three live in memory-mapped files (see MappedLimiterTable), so every server
+// process on the host that points at the same directory draws from the same budgets.
 public class RateLimiter {
+    private static final int MAX_TRACKED_IPS = 100_000;
+    private static final int MAX_HEAVY_HITTERS = 10_000;
+    private static final int SKETCH_WIDTH = 1 << 16;     // 4 rows x 64K counters x 2 windows = 2MB
+    private static final int MAX_TRACKED_PATHS = 10_000;
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    public enum Algorithm {
+        TOKEN_BUCKET,   // TokenBucket, a lock per bucket
+        GCRA            // GcraLimiter, one CAS per check
+    }
 
-    private final TokenBucket serverBucket;            // Global bucket
-    private final Map<String, TokenBucket> ipBucket;   // Per-IP buckets
-    private final Map<String, TokenBucket> pathBucket; // Per-path buckets
+    public enum IpMode {
+        EXACT,          // a limiter per client IP (bounded by MAX_TRACKED_IPS)
+        SKETCH          // count-min sketch for everyone, exact limiters only for heavy hitters
+    }
+
+    private final Algorithm algorithm;
+    private final Limiter serverBucket;            // Global bucket
+    private final LimiterStore ipBucket;   // Per-IP buckets (EXACT) or promoted heavy hitters (SKETCH)
+    private final HeavyHitterLimiter heavyHitters;     // null in EXACT mode
+    private final LimiterStore pathBucket; // Per-route buckets
 
-    private final int perIpCapacity;
-    private final double perIpRefillRate;
-    private final int perPathCapacity;
-    private final double perPathRefillRate;
 
     public RateLimiter(int serverCapacity, double serverRefillRate,
                        int perIpCapacity, double perIpRefillRate,
                        int perPathCapacity, double perPathRefillRate) {
+        this(serverCapacity, serverRefillRate, perIpCapacity, perIpRefillRate, perPathCapacity, perPathRefillRate,
+                Algorithm.TOKEN_BUCKET);
+    }
+
+    public RateLimiter(int serverCapacity, double serverRefillRate,
+                       int perIpCapacity, double perIpRefillRate,
+                       int perPathCapacity, double perPathRefillRate,
+                       Algorithm algorithm) {
+        this(serverCapacity, serverRefillRate, perIpCapacity, perIpRefillRate, perPathCapacity, perPathRefillRate,
+                algorithm, IpMode.EXACT);
+    }
+
+    public RateLimiter(int serverCapacity, double serverRefillRate,
+                       int perIpCapacity, double perIpRefillRate,
+                       int perPathCapacity, double perPathRefillRate,
+                       Algorithm algorithm, IpMode ipMode) {
+        this(serverCapacity, serverRefillRate, perIpCapacity, perIpRefillRate, perPathCapacity, perPathRefillRate,
+                algorithm, ipMode, null);
+    }
 
-        this.serverBucket = new TokenBucket(serverCapacity, serverRefillRate);
-        this.ipBucket = new ConcurrentHashMap<>();
-        this.pathBucket = new ConcurrentHashMap<>();
+    // sharedDir != null: keep the limits in mapped files there, shared with the other processes using it.
+    // Those are always GCRA, algorithm is ignored. In SKETCH mode only the promoted limiters are shared,
+    // each process counts its own traffic in its sketch.
+    public RateLimiter(int serverCapacity, double serverRefillRate,
+                       int perIpCapacity, double perIpRefillRate,
+                       int perPathCapacity, double perPathRefillRate,
+                       Algorithm algorithm, IpMode ipMode, Path sharedDir) {
+
+        this.algorithm = sharedDir != null ? Algorithm.GCRA : algorithm;
+        int maxIps = ipMode == IpMode.SKETCH ? MAX_HEAVY_HITTERS : MAX_TRACKED_IPS;
+        if (sharedDir != null) {
+            try {
+                Files.createDirectories(sharedDir);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            this.serverBucket = new MappedLimiterTable(sharedDir.resolve("global.limits"), 1,
+                    serverCapacity, serverRefillRate).get("global");
+            this.ipBucket = new MappedLimiterTable(sharedDir.resolve("ip.limits"), maxIps,
+                    perIpCapacity, perIpRefillRate);
+            this.pathBucket = new MappedLimiterTable(sharedDir.resolve("path.limits"), MAX_TRACKED_PATHS,
+                    perPathCapacity, perPathRefillRate);
+        } else {
+            this.serverBucket = newLimiter(serverCapacity, serverRefillRate);
+            this.ipBucket = new LimiterTable(() -> newLimiter(perIpCapacity, perIpRefillRate),
+                    maxIps, SWEEP_INTERVAL_NANOS);
+            this.pathBucket = new LimiterTable(() -> newLimiter(perPathCapacity, perPathRefillRate),
+                    MAX_TRACKED_PATHS, SWEEP_INTERVAL_NANOS);
+        }
+        this.heavyHitters = ipMode == IpMode.SKETCH
+                ? new HeavyHitterLimiter(ipBucket, perIpCapacity, perIpRefillRate, SKETCH_WIDTH)
+                : null;
+    }
 
-        this.perIpCapacity = perIpCapacity;
-        this.perIpRefillRate = perIpRefillRate;
-        this.perPathCapacity = perPathCapacity;
-        this.perPathRefillRate = perPathRefillRate;
+    private Limiter newLimiter(int capacity, double refillRate) {
+        return algorithm == Algorithm.GCRA
+                ? new GcraLimiter(capacity, refillRate)
+                : new TokenBucket(capacity, refillRate);
     }
 
+    // path = the rate limit key of the request, see Router.rateLimitKey
     public boolean checkRequest(String path, String ip) {
         if (!serverBucket.allowRequest()) return false;
 
         return checkIp(ip) && checkPath(path);
     }
 
+    // accept-time check on the remote address alone (see AdmissionControl). Only looks, never charges:
+    // the requests on an admitted connection are counted by checkRequest, so nothing is counted twice
+    // and a client with budget left is never turned away here
+    public boolean admit(String ip) {
+        if (serverBucket.getTokens() < 1) return false;
+
+        Limiter bucket = heavyHitters != null ? heavyHitters.peek(ip) : ipBucket.peek(ip);
+        return bucket == null || bucket.getTokens() >= 1;     // not tracked yet = nothing used
+    }
+
     private boolean checkIp(String ipAddress) {
-        TokenBucket bucket = ipBucket.computeIfAbsent(ipAddress,
-                k -> new TokenBucket(perIpCapacity, perIpRefillRate));
+        if (heavyHitters != null) {
+            return heavyHitters.allowRequest(ipAddress);
+        }
+        Limiter bucket = ipBucket.get(ipAddress);
         return bucket.allowRequest();
     }
 
     private boolean checkPath(String path) {
-        TokenBucket bucket = pathBucket.computeIfAbsent(path,
-                k -> new TokenBucket(perPathCapacity, perPathRefillRate));
+        Limiter bucket = pathBucket.get(path);
         return bucket.allowRequest();
     }
 
     // -------------------- GETTERS --------------------
-    public TokenBucket getServerBucket() {
+    public Limiter getServerBucket() {
         return serverBucket;
     }
 
-    public Map<String, TokenBucket> getIpBucket() {
-        return ipBucket;
+    public Limiter getIpBucket(String ip) {
+        return ipBucket.peek(ip);
+    }
+
+    public Limiter getPathBucket(String path) {
+        return pathBucket.peek(path);
+    }
+
+    public int getTrackedIps() {
+        return ipBucket.size();
     }
 
-    public Map<String, TokenBucket> getPathBucket() {
-        return pathBucket;
+    public int getTrackedPaths() {
+        return pathBucket.size();
     }
 
     public double getGlobalTokens() {
@@ -65,12 +157,12 @@ public class RateLimiter {
     }
 
     public double getIpTokens(String ip) {
-        TokenBucket bucket = ipBucket.get(ip);
+        Limiter bucket = ipBucket.peek(ip);
         return bucket != null ? bucket.getTokens() : 0;
     }
 
     public double getPathTokens(String path) {
-        TokenBucket bucket = pathBucket.get(path);
+        Limiter bucket = pathBucket.peek(path);
         return bucket != null ? bucket.getTokens() : 0;
     }
 
@@ -82,13 +174,13 @@ public class RateLimiter {
         double globalReset = (globalLimit - globalRemaining) / rateLimiter.getServerBucket().getRefillRate();
 
         // Per-IP bucket
-        TokenBucket ipBucket = rateLimiter.getIpBucket().get(ip);
+        Limiter ipBucket = rateLimiter.getIpBucket(ip);
         int ipLimit = ipBucket != null ? ipBucket.getCapacity() : 0;
         double ipRemaining = ipBucket != null ? ipBucket.getTokens() : 0;
         double ipReset = ipBucket != null ? (ipLimit - ipRemaining) / ipBucket.getRefillRate() : 0;
 
         // Per-path bucket
-        TokenBucket pathBucket = rateLimiter.getPathBucket().get(path);
+        Limiter pathBucket = rateLimiter.getPathBucket(path);
         int pathLimit = pathBucket != null ? pathBucket.getCapacity() : 0;
         double pathRemaining = pathBucket != null ? pathBucket.getTokens() : 0;
         double pathReset = pathBucket != null ? (pathLimit - pathRemaining) / pathBucket.getRefillRate() : 0;
@@ -98,8 +190,8 @@ public class RateLimiter {
         double reset = Math.max(Math.max(globalReset, ipReset), pathReset);
 
         // Write headers
-        out.println("X-RateLimit-Limit: " + Math.max(globalLimit, Math.max(ipLimit, pathLimit)));
-        out.println("X-RateLimit-Remaining: " + (int) remaining);
-        out.println("X-RateLimit-Reset: " + (int) Math.ceil(reset));
+        ResponseWriter.writeHeader(out, "X-RateLimit-Limit", Math.max(globalLimit, Math.max(ipLimit, pathLimit)));
+        ResponseWriter.writeHeader(out, "X-RateLimit-Remaining", (int) remaining);
+        ResponseWriter.writeHeader(out, "X-RateLimit-Reset", (int) Math.ceil(reset));
     }
 }
@@ -1,10 +1,13 @@
 package main.java.rateLimiting;
 
-public class TokenBucket {
+import java.util.concurrent.locks.ReentrantLock;
+
+public class TokenBucket implements Limiter {
     private final int capacity;          // max tokens the bucket can hold
     private final double refillRate;     // tokens per second
     private double tokens;               // current tokens (can be fractional)
     private long lastRefillTime;         // last refill timestamp (nanoseconds)
+    private final ReentrantLock lock = new ReentrantLock();   // not synchronized, so virtual threads don't pin
 
     public TokenBucket(int capacity, double refillRate) {
         this.capacity = capacity;
@@ -13,14 +16,20 @@ public class TokenBucket {
         this.lastRefillTime = System.nanoTime();
     }
 
-    public synchronized boolean allowRequest() {
-        refill();
+    @Override
+    public boolean allowRequest() {
+        lock.lock();
+        try {
+            refill();
 
-        if (tokens >= 1) {
-            tokens -= 1;
-            return true;
-        } else {
-            return false;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return true;
+            } else {
+                return false;
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -36,14 +45,23 @@ public class TokenBucket {
         }
     }
 
-    public synchronized double getTokens() {
-        return tokens;
+    @Override
+    public double getTokens() {
+        lock.lock();
+        try {
+            refill();
+            return tokens;
+        } finally {
+            lock.unlock();
+        }
     }
 
+    @Override
     public int getCapacity() {
         return capacity;
     }
 
+    @Override
     public double getRefillRate() {
         return refillRate;
     }